@@ -2,17 +2,27 @@ package com.cnblogs.hoojo.fabric.sdk.config;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -57,6 +67,42 @@ public class DefaultConfiguration {
 	private static final String DEPLOY_WAIT_TIME = PREFIX + "DeployWaitTime";
 	/** 发起proposal等待时间 */
 	private static final String PROPOSAL_WAIT_TIME = PREFIX + "ProposalWaitTime";
+	/** 批量交易最大并发（在途）数量 */
+	private static final String BATCH_MAX_IN_FLIGHT = PREFIX + "BatchMaxInFlight";
+	/** 交易执行器最大线程数量，每个阻塞的背书提议占用一个线程 */
+	private static final String TRANSACTION_THREADS = PREFIX + "TransactionThreads";
+	/** 交易执行器等待队列大小，线程全忙且队列已满时拒绝新的异步交易（背压） */
+	private static final String TRANSACTION_QUEUE_SIZE = PREFIX + "TransactionQueueSize";
+	/** 组织用户注册认证的最大并发数量 */
+	private static final String ENROLL_CONCURRENCY = PREFIX + "EnrollConcurrency";
+	/** 证书到期前多久重新认证（秒） */
+	private static final String ENROLLMENT_RENEW_BEFORE = PREFIX + "EnrollmentRenewBefore";
+	/** 证书到期检查间隔（秒） */
+	private static final String ENROLLMENT_RENEW_INTERVAL = PREFIX + "EnrollmentRenewInterval";
+	/** 通道序列化检查模式：full 序列化后关闭通道再反序列化恢复，validate 只检查能否序列化，skip 不检查 */
+	private static final String CHANNEL_SERIALIZE_CHECK = PREFIX + "ChannelSerializeCheck";
+	/** 多通道并发初始化的最大并发数量 */
+	private static final String CHANNEL_INIT_CONCURRENCY = PREFIX + "ChannelInitConcurrency";
+	/** 节点已加入通道列表的缓存时间（秒） */
+	private static final String CHANNEL_MEMBERSHIP_CACHE_TTL = PREFIX + "ChannelMembershipCacheTTL";
+	/** 配置热加载，监听配置文件变化后自动重新加载配置 */
+	private static final String CONFIG_HOT_RELOAD = PREFIX + "ConfigHotReload";
+	/** 查询路由，每次查询只发送到一个延迟最低的节点 */
+	private static final String QUERY_ROUTING = PREFIX + "QueryRouting";
+	/** 查询和法定数量背书的对冲等待时间（毫秒），节点耗时样本不足时使用，小于等于0不对冲 */
+	private static final String QUERY_HEDGE_DELAY = PREFIX + "QueryHedgeDelay";
+	/** 查询路由和法定数量背书的对冲执行器最大线程数量，线程全忙时不再对冲 */
+	private static final String HEDGE_THREADS = PREFIX + "HedgeThreads";
+	/** 法定数量背书模式下等待提议响应（包括对冲提议）的时间（毫秒） */
+	private static final String QUORUM_WAIT_TIME = PREFIX + "QuorumWaitTime";
+	/** 节点 gRPC 连接允许接收的最大消息（字节） */
+	private static final String MAX_INBOUND_MESSAGE_SIZE = PREFIX + "MaxInboundMessageSize";
+	/** 分页查询每页记录数量 */
+	private static final String QUERY_PAGE_SIZE = PREFIX + "QueryPageSize";
+	/** 查询结果缓存的最大条数，小于等于0不缓存 */
+	private static final String QUERY_CACHE_SIZE = PREFIX + "QueryCacheSize";
+	/** 查询结果缓存失效模式：namespace 按区块读写集涉及的 chaincode 失效，all 每个区块失效通道全部缓存 */
+	private static final String QUERY_CACHE_INVALIDATION = PREFIX + "QueryCacheInvalidation";
 
 	/** 区块链网络配置key的前缀 */
 	private static final String FABRIC_NETWORK_KEY_PREFIX = PREFIX + "application.org.";
@@ -82,127 +128,237 @@ public class DefaultConfiguration {
 	/** fabric network  config 配置文件路径 */
 	private static final String NETWORK_CONFIG_DIR_FILE_PATH = "NETWORK_CONFIG_DIR_FILE_PATH_LOCATION";
 	
-	/** SDK 配置 */
-	private static final Properties sdkProperties = new Properties();
-	/** ORG 配置 */
-	private static final HashMap<String, Organization> ORGANIZATION_RESOURCES = new HashMap<>();
+	/** 当前生效的配置快照，重新加载时整体替换，读取配置无需加锁 */
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+	/** 配置文件变化监听线程 */
+	private Thread watcher;
 	
 	private static DefaultConfiguration config;
 	
-	/** 开启TLS证书，也就是https(grpcs)协议和http(grpc)协议之间的切换 */
-	private final boolean runningTLS;
-	private final boolean runningFabricCATLS;
-	private final boolean runningFabricTLS;
+	/** 配置文件变化后等待写入完成的时间（毫秒） */
+	private static final long RELOAD_DEBOUNCE = 500;
+	/** TLS 证书文件变化检查间隔（毫秒） */
+	private static final long TLS_CHECK_INTERVAL = 5000;
+	/** 节点类型:名称 -> TLS 证书配置 */
+	private final Map<String, TLSDescriptor> tlsDescriptors = new ConcurrentHashMap<>();
 
 	private DefaultConfiguration() {
-		File configFile;
-		InputStream stream;
-
-		try {
-			// 读取 sdk 配置文件，没有就读取默认配置 DEFAULT_CONFIG
-			String configPath = System.getProperty(FABRIC_SDK_CONFIG, DEFAULT_SDK_CONFIG);
-			configFile = new File(configPath).getAbsoluteFile();
-			logger.info("FileSystem加载SDK配置文件： {}， 配置文件是否存在: {}", configFile.toString(), configFile.exists());
-			
-			if (!configFile.exists()) {
-				stream = DefaultConfiguration.class.getResourceAsStream("/" + configFile.getName());
-				logger.info("ClassPath加载SDK配置文件： {}， 配置文件是否存在: {}", configFile.getName(), stream != null);
-			} else {
-				stream = new FileInputStream(configFile);
-			}
-			
-			sdkProperties.load(stream);
+		snapshot.set(loadSnapshot());
+		
+		if (isConfigHotReload()) {
+			startWatch();
+		}
+	}
+	
+	/** 读取配置文件，构建新的配置快照 */
+	private Snapshot loadSnapshot() {
+		Properties props = new Properties();
+		
+		// 读取 sdk 配置文件，没有就读取默认配置 DEFAULT_CONFIG
+		String configPath = System.getProperty(FABRIC_SDK_CONFIG, DEFAULT_SDK_CONFIG);
+		File configFile = new File(configPath).getAbsoluteFile();
+		
+		try (InputStream stream = openConfigStream(configFile)) {
+			props.load(stream);
 		} catch (Exception e) { // if not there no worries just use defaults
 			logger.warn("加载SDK配置文件: {} 失败. 使用SDK默认配置", DEFAULT_SDK_CONFIG);
-		} finally {
+		}
 
-			final String version = getFabricConfigGeneratorVersion();
-			if (!StringUtils.startsWith(version, "v")) {
-				throw new IllegalArgumentException("Expected Config 'FABRIC_CONFIG_GENERATOR_VERSION' or Env 'FAB_CONFIG_GEN_VERS' Must start with 'v' (eg: v1.0)");
-			}
-			final String[] versions = version.substring(1).split("\\.");
-	        if (versions.length != 2) {
-	        	throw new IllegalArgumentException("Expected Config 'FABRIC_CONFIG_GENERATOR_VERSION' or Env 'FAB_CONFIG_GEN_VERS' to be three numbers sperated by dots (v1.0)");
-	        }
-	        
-			configurationDefaultValues();
-			
-			// TLS 
-			String tls = getSDKProperty(TLS_PATH, System.getenv("ORG_HYPERLEDGER_FABRIC_SDKTEST_INTEGRATIONTESTS_TLS"));
-			logger.debug("tls: {}", tls);
-			runningTLS = StringUtils.equals(tls, "true");
-			runningFabricCATLS = runningTLS;
-			runningFabricTLS = runningTLS;
-			
-			// 找到组织配置 peerOrg1/peerOrg2
-			addOrganizationResources();
+		final String version = props.getProperty(FABRIC_CONFIG_GENERATOR_VERSION, System.getenv("FAB_CONFIG_GEN_VERS"));
+		if (!StringUtils.startsWith(version, "v")) {
+			throw new IllegalArgumentException("Expected Config 'FABRIC_CONFIG_GENERATOR_VERSION' or Env 'FAB_CONFIG_GEN_VERS' Must start with 'v' (eg: v1.0)");
+		}
+		final String[] versions = version.substring(1).split("\\.");
+        if (versions.length != 2) {
+        	throw new IllegalArgumentException("Expected Config 'FABRIC_CONFIG_GENERATOR_VERSION' or Env 'FAB_CONFIG_GEN_VERS' to be three numbers sperated by dots (v1.0)");
+        }
+        
+		configurationDefaultValues(props);
+		
+		// TLS 
+		String tls = props.getProperty(TLS_PATH, System.getenv("ORG_HYPERLEDGER_FABRIC_SDKTEST_INTEGRATIONTESTS_TLS"));
+		logger.debug("tls: {}", tls);
+		
+		Snapshot snapshot = new Snapshot(props, configFile.exists() ? configFile : null, StringUtils.equals(tls, "true"));
+		
+		// 找到组织配置 peerOrg1/peerOrg2
+		addOrganizationResources(snapshot);
 
-			// 设置组织 orderer、peer、eventhub、domain、cert等配置
-			for (Map.Entry<String, Organization> org : ORGANIZATION_RESOURCES.entrySet()) {
-				final Organization organization = org.getValue();
-				final String orgName = org.getKey();
+		// 设置组织 orderer、peer、eventhub、domain、cert等配置
+		for (Map.Entry<String, Organization> org : snapshot.organizations.entrySet()) {
+			final Organization organization = org.getValue();
+			final String orgName = org.getKey();
 
-				final String domainName = getSDKProperty(FABRIC_NETWORK_KEY_PREFIX + orgName + ".domname");
-				organization.setDomainName(domainName);
+			final String domainName = snapshot.getProperty(FABRIC_NETWORK_KEY_PREFIX + orgName + ".domname");
+			organization.setDomainName(domainName);
 
-				addPeerLocation(organization, orgName);
-				addOrdererLocation(organization, orgName);
-				if (this.isFabricVersionBefore("1.3")) {
-					addEventHubLocation(organization, orgName);
-				}
+			addPeerLocation(snapshot, organization, orgName);
+			addOrdererLocation(snapshot, organization, orgName);
+			if (!isFabricVersionAtOrAfter(snapshot, "1.3")) {
+				addEventHubLocation(snapshot, organization, orgName);
+			}
 
-				setCAProperties(organization, orgName);
-				
-				logger.debug("最终organization配置：{}", organization);
+			setCAProperties(snapshot, organization, orgName);
+			
+			logger.debug("最终organization配置：{}", organization);
+		}
+		
+		// 节点名称 -> MSP，背书节点选择时按节点查找组织，不再遍历组织
+		for (Organization organization : snapshot.organizations.values()) {
+			for (String peerName : organization.getPeerNames()) {
+				snapshot.peerMSPIDs.put(peerName, organization.getMSPID());
 			}
+		}
 
-			logger.debug("最终ORGANIZATION_RESOURCES配置：{}", ORGANIZATION_RESOURCES);
+		logger.debug("最终ORGANIZATION_RESOURCES配置：{}", snapshot.organizations);
+		return snapshot;
+	}
+	
+	private InputStream openConfigStream(File configFile) throws IOException {
+		logger.info("FileSystem加载SDK配置文件： {}， 配置文件是否存在: {}", configFile.toString(), configFile.exists());
+		
+		if (!configFile.exists()) {
+			InputStream stream = DefaultConfiguration.class.getResourceAsStream("/" + configFile.getName());
+			logger.info("ClassPath加载SDK配置文件： {}， 配置文件是否存在: {}", configFile.getName(), stream != null);
+			
+			return stream;
+		}
+		return new FileInputStream(configFile);
+	}
+	
+	/**
+	 * 重新加载配置文件，构建新的配置快照后整体替换当前快照；
+	 * 组织的 CA 客户端、管理员和用户沿用旧快照中的状态，加载失败时继续使用当前配置
+	 * @return 是否重新加载成功
+	 */
+	public synchronized boolean reload() {
+		final Snapshot previous = snapshot.get();
+		
+		Snapshot next;
+		try {
+			next = loadSnapshot();
+		} catch (Exception e) {
+			logger.error("重新加载SDK配置失败，继续使用当前配置", e);
+			return false;
+		}
+		
+		for (Organization organization : next.organizations.values()) {
+			organization.inheritRuntimeState(previous.organizations.get(organization.getName()));
+		}
+		
+		snapshot.set(next);
+		tlsDescriptors.clear();
+		
+		logger.info("重新加载SDK配置完成：{}", next.configFile);
+		return true;
+	}
+	
+	/** 监听配置文件变化，文件修改后自动重新加载配置 */
+	public synchronized void startWatch() {
+		if (watcher != null) {
+			return;
+		}
+		
+		final File configFile = snapshot.get().configFile;
+		if (configFile == null) {
+			logger.warn("SDK配置文件不在文件系统中，无法监听配置变化");
+			return;
+		}
+		
+		watcher = new Thread(() -> watch(configFile), getClass().getSimpleName() + "-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+		
+		logger.info("开始监听SDK配置文件：{}", configFile);
+	}
+	
+	/** 停止监听配置文件变化 */
+	public synchronized void stopWatch() {
+		if (watcher != null) {
+			watcher.interrupt();
+			watcher = null;
+		}
+	}
+	
+	private void watch(File configFile) {
+		Path dir = configFile.getParentFile().toPath();
+		
+		try (WatchService service = dir.getFileSystem().newWatchService()) {
+			dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key = service.take();
+				
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (configFile.getName().equals(String.valueOf(event.context()))) {
+						changed = true;
+					}
+				}
+				if (!key.reset()) {
+					logger.warn("SDK配置文件目录已不可用，停止监听：{}", dir);
+					return;
+				}
+				
+				if (changed) {
+					// 等待文件写入完成，短时间内的多次修改只重新加载一次
+					Thread.sleep(RELOAD_DEBOUNCE);
+					
+					if (configFile.lastModified() != snapshot.get().lastModified) {
+						reload();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			logger.error("监听SDK配置文件失败：{}", configFile, e);
 		}
 	}
 	
 	/** 添加组织事件总线URL配置 */
-	private void addEventHubLocation(Organization organization, String orgName) {
-		String eventHubProps = getSDKProperty(FABRIC_NETWORK_KEY_PREFIX + orgName + ".eventhub_locations");
+	private void addEventHubLocation(Snapshot snapshot, Organization organization, String orgName) {
+		String eventHubProps = snapshot.getProperty(FABRIC_NETWORK_KEY_PREFIX + orgName + ".eventhub_locations");
 		String[] eventHubs = eventHubProps.split("[ \t]*,[ \t]*");
 		for (String eventHub : eventHubs) {
 			String[] key_val = eventHub.split("[ \t]*@[ \t]*");
-			organization.addEventHubLocation(key_val[0], grpcTLSify(key_val[1]));
+			organization.addEventHubLocation(key_val[0], grpcTLSify(snapshot, key_val[1]));
 			
-			logger.debug("addEventHubLocation：{}->{}", key_val[0], grpcTLSify(key_val[1]));
+			logger.debug("addEventHubLocation：{}->{}", key_val[0], grpcTLSify(snapshot, key_val[1]));
 		}
 	}
 	
 	/** 添加Orderer服务URL配置 */
-	private void addOrdererLocation(Organization organization, String orgName) {
-		String ordererProps = getSDKProperty(FABRIC_NETWORK_KEY_PREFIX + orgName + ".orderer_locations");
+	private void addOrdererLocation(Snapshot snapshot, Organization organization, String orgName) {
+		String ordererProps = snapshot.getProperty(FABRIC_NETWORK_KEY_PREFIX + orgName + ".orderer_locations");
 		String[] orderers = ordererProps.split("[ \t]*,[ \t]*");
 		for (String orderer : orderers) {
 			String[] key_val = orderer.split("[ \t]*@[ \t]*");
-			organization.addOrdererLocation(key_val[0], grpcTLSify(key_val[1]));
+			organization.addOrdererLocation(key_val[0], grpcTLSify(snapshot, key_val[1]));
 			
-			logger.debug("addOrdererLocation：{}->{}", key_val[0], grpcTLSify(key_val[1]));
+			logger.debug("addOrdererLocation：{}->{}", key_val[0], grpcTLSify(snapshot, key_val[1]));
 		}
 	}
 	
 	/** 添加Peer节点URL配置 */
-	private void addPeerLocation(Organization organization, String orgName) {
-		String peerProps = getSDKProperty(FABRIC_NETWORK_KEY_PREFIX + orgName + ".peer_locations");
+	private void addPeerLocation(Snapshot snapshot, Organization organization, String orgName) {
+		String peerProps = snapshot.getProperty(FABRIC_NETWORK_KEY_PREFIX + orgName + ".peer_locations");
 		String[] peers = peerProps.split("[ \t]*,[ \t]*");
 		for (String peer : peers) {
 			String[] key_val = peer.split("[ \t]*@[ \t]*");
-			organization.addPeerLocation(key_val[0], grpcTLSify(key_val[1]));
+			organization.addPeerLocation(key_val[0], grpcTLSify(snapshot, key_val[1]));
 			
-			logger.debug("addPeerLocation：{}->{}", key_val[0], grpcTLSify(key_val[1]));
+			logger.debug("addPeerLocation：{}->{}", key_val[0], grpcTLSify(snapshot, key_val[1]));
 		}
 	}
 	
 	/** 设置 CA 配置 */
-	private void setCAProperties(Organization organization, String orgName) {
-		organization.setCALocation(httpTLSify(getSDKProperty((FABRIC_NETWORK_KEY_PREFIX + orgName + ".ca_location"))));
-		organization.setCAName(getSDKProperty((FABRIC_NETWORK_KEY_PREFIX + orgName + ".caName")));
+	private void setCAProperties(Snapshot snapshot, Organization organization, String orgName) {
+		organization.setCALocation(httpTLSify(snapshot, snapshot.getProperty((FABRIC_NETWORK_KEY_PREFIX + orgName + ".ca_location"))));
+		organization.setCAName(snapshot.getProperty((FABRIC_NETWORK_KEY_PREFIX + orgName + ".caName")));
 		
-		if (runningFabricCATLS) {
-			String cert = getCryptoTxConfigRootPath() + "/crypto-config/peerOrganizations/DNAME/ca/ca.DNAME-cert.pem";
+		if (snapshot.runningFabricCATLS) {
+			String cert = getCryptoTxConfigRootPath(snapshot) + "/crypto-config/peerOrganizations/DNAME/ca/ca.DNAME-cert.pem";
 			cert = cert.replaceAll("DNAME", organization.getDomainName());
 			
 			File certFile = new File(cert);
@@ -221,10 +377,10 @@ public class DefaultConfiguration {
 		logger.debug("ca properties: {}", organization.getCAProperties());
 	}
 	
-	private void addOrganizationResources() {
-		for (Map.Entry<Object, Object> item : sdkProperties.entrySet()) {
-			final String key = item.getKey() + "";
-			final String val = item.getValue() + "";
+	private void addOrganizationResources(Snapshot snapshot) {
+		for (Map.Entry<String, String> item : snapshot.properties.entrySet()) {
+			final String key = item.getKey();
+			final String val = item.getValue();
 
 			if (key.startsWith(FABRIC_NETWORK_KEY_PREFIX)) {
 				
@@ -233,7 +389,7 @@ public class DefaultConfiguration {
 					String orgName = match.group(1).trim();
 					
 					Organization org = new Organization(orgName, val.trim());
-					ORGANIZATION_RESOURCES.put(orgName, org);
+					snapshot.organizations.put(orgName, org);
 					
 					logger.debug("添加组织: {} => {}", orgName, org);
 				}
@@ -241,55 +397,73 @@ public class DefaultConfiguration {
 		}
 	}
 	
-	private void configurationDefaultValues() {
+	private void configurationDefaultValues(Properties props) {
 		// Default values
-		defaultProperty(INVOKE_WAIT_TIME, "32000");
-		defaultProperty(DEPLOY_WAIT_TIME, "120000");
-		defaultProperty(PROPOSAL_WAIT_TIME, "120000");
+		defaultProperty(props, INVOKE_WAIT_TIME, "32000");
+		defaultProperty(props, DEPLOY_WAIT_TIME, "120000");
+		defaultProperty(props, PROPOSAL_WAIT_TIME, "120000");
+		defaultProperty(props, BATCH_MAX_IN_FLIGHT, "100");
+		defaultProperty(props, TRANSACTION_THREADS, "32");
+		defaultProperty(props, TRANSACTION_QUEUE_SIZE, "1024");
+		defaultProperty(props, ENROLL_CONCURRENCY, "4");
+		defaultProperty(props, ENROLLMENT_RENEW_BEFORE, "86400");
+		defaultProperty(props, ENROLLMENT_RENEW_INTERVAL, "60");
+		defaultProperty(props, CHANNEL_SERIALIZE_CHECK, "validate");
+		defaultProperty(props, CHANNEL_INIT_CONCURRENCY, "8");
+		defaultProperty(props, CHANNEL_MEMBERSHIP_CACHE_TTL, "60");
+		defaultProperty(props, CONFIG_HOT_RELOAD, "false");
+		defaultProperty(props, QUERY_ROUTING, "true");
+		defaultProperty(props, QUERY_HEDGE_DELAY, "500");
+		defaultProperty(props, HEDGE_THREADS, "32");
+		defaultProperty(props, QUORUM_WAIT_TIME, "5000");
+		defaultProperty(props, MAX_INBOUND_MESSAGE_SIZE, "9000000");
+		defaultProperty(props, QUERY_PAGE_SIZE, "100");
+		defaultProperty(props, QUERY_CACHE_SIZE, "0");
+		defaultProperty(props, QUERY_CACHE_INVALIDATION, "namespace");
 
 		// Default network values
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.mspid", "Org1MSP");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.domname", "org1.example.com");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.caName", "ca0");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.ca_location", "http://" + FABRIC_NETWORK_HOST + ":7054");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.orderer_locations", "orderer.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7050");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.peer_locations", "peer0.org1.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7051, peer1.org1.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7056");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.eventhub_locations", "peer0.org1.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7053, peer1.org1.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7058");
-		
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.mspid", "Org2MSP");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.domname", "org2.example.com");
-		//defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.caName", "ca1");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.ca_location", "http://" + FABRIC_NETWORK_HOST + ":8054");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.orderer_locations", "orderer.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7050");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.peer_locations", "peer0.org2.example.com@grpc://" + FABRIC_NETWORK_HOST + ":8051, peer1.org2.example.com@grpc://" + FABRIC_NETWORK_HOST + ":8056");
-		defaultProperty(FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.eventhub_locations", "peer0.org2.example.com@grpc://" + FABRIC_NETWORK_HOST + ":8053, peer1.org2.example.com@grpc://" + FABRIC_NETWORK_HOST + ":8058");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.mspid", "Org1MSP");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.domname", "org1.example.com");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.caName", "ca0");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.ca_location", "http://" + FABRIC_NETWORK_HOST + ":7054");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.orderer_locations", "orderer.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7050");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.peer_locations", "peer0.org1.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7051, peer1.org1.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7056");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg1.eventhub_locations", "peer0.org1.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7053, peer1.org1.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7058");
+		
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.mspid", "Org2MSP");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.domname", "org2.example.com");
+		//defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.caName", "ca1");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.ca_location", "http://" + FABRIC_NETWORK_HOST + ":8054");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.orderer_locations", "orderer.example.com@grpc://" + FABRIC_NETWORK_HOST + ":7050");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.peer_locations", "peer0.org2.example.com@grpc://" + FABRIC_NETWORK_HOST + ":8051, peer1.org2.example.com@grpc://" + FABRIC_NETWORK_HOST + ":8056");
+		defaultProperty(props, FABRIC_NETWORK_KEY_PREFIX + "peerOrg2.eventhub_locations", "peer0.org2.example.com@grpc://" + FABRIC_NETWORK_HOST + ":8053, peer1.org2.example.com@grpc://" + FABRIC_NETWORK_HOST + ":8058");
 
 		// Default tls values
-		defaultProperty(TLS_PATH, null);
+		defaultProperty(props, TLS_PATH, null);
 		
-		logger.debug("SDK Properties：{}", sdkProperties);
+		logger.debug("SDK Properties：{}", props);
 	}
 	
 	public boolean isRunningFabricTLS() {
-		return runningFabricTLS;
+		return snapshot.get().runningFabricTLS;
 	}
 
 	/** GRPC 协议 开启TLS证书 */
-	private String grpcTLSify(String location) {
+	private String grpcTLSify(Snapshot snapshot, String location) {
 		location = location.trim();
 		Exception e = Utils.checkGrpcUrl(location);
 		if (e != null) {
 			throw new RuntimeException(String.format("Bad TEST parameters for grpc url %s", location), e);
 		}
 
-		return runningFabricTLS ? location.replaceFirst("^grpc://", "grpcs://") : location;
+		return snapshot.runningFabricTLS ? location.replaceFirst("^grpc://", "grpcs://") : location;
 	}
 
 	/** HTTP 协议 开启TLS证书 */
-	private String httpTLSify(String location) {
+	private String httpTLSify(Snapshot snapshot, String location) {
 		location = location.trim();
 
-		return runningFabricCATLS ? location.replaceFirst("^http://", "https://") : location;
+		return snapshot.runningFabricCATLS ? location.replaceFirst("^http://", "https://") : location;
 	}
 
 	/**
@@ -304,6 +478,9 @@ public class DefaultConfiguration {
 	}
 	
 	public static DefaultConfiguration resetConfig() {
+		if (config != null) {
+			config.stopWatch();
+		}
 		config = null;
 		
 		return getConfig();
@@ -321,18 +498,18 @@ public class DefaultConfiguration {
 		return ret;
 	}
 	
-	private static String getSDKProperty(String property, String defaultValue) {
-		return sdkProperties.getProperty(property, defaultValue);
+	private String getSDKProperty(String property, String defaultValue) {
+		return snapshot.get().getProperty(property, defaultValue);
 	}
 	
-	private static String getSDKProperty(String property) {
-		return sdkProperties.getProperty(property);
+	private String getSDKProperty(String property) {
+		return snapshot.get().getProperty(property);
 	}
 
 	/**
 	 * 默认配置优先读取 系统级别 配置，如果系统环境配置为空，则读取运行变量中的配置
 	 */
-	private static void defaultProperty(String key, String value) {
+	private static void defaultProperty(Properties props, String key, String value) {
 
 		String data = System.getProperty(key);
 		logger.trace("读取系统环境配置：{} => {}", key, data);
@@ -343,7 +520,7 @@ public class DefaultConfiguration {
 			
 			logger.trace("读取变量环境配置：{} => {}", envKey, data);
 			if (data == null) {
-				if (null == getSDKProperty(key) && value != null) {
+				if (null == props.getProperty(key) && value != null) {
 					data = value;
 					logger.trace("使用默认配置：{} => {}", key, data);
 				}
@@ -351,24 +528,114 @@ public class DefaultConfiguration {
 		}
 
 		if (data != null) {
-			sdkProperties.put(key, data);
+			props.put(key, data);
 			logger.debug("添加SDK配置: {} => {}", key, data);
 		}
 	}
 
 	/** 交易等待时间 */
 	public int getTransactionWaitTime() {
-		return Integer.parseInt(getProperty(INVOKE_WAIT_TIME));
+		return snapshot.get().transactionWaitTime;
 	}
 
 	/** 部署等待时间 */
 	public int getDeployWaitTime() {
-		return Integer.parseInt(getProperty(DEPLOY_WAIT_TIME));
+		return snapshot.get().deployWaitTime;
 	}
 
 	/** 交易动作等待时间 */
 	public long getProposalWaitTime() {
-		return Integer.parseInt(getProperty(PROPOSAL_WAIT_TIME));
+		return snapshot.get().proposalWaitTime;
+	}
+
+	/** 批量交易最大在途数量 */
+	public int getBatchMaxInFlight() {
+		return snapshot.get().batchMaxInFlight;
+	}
+
+	/** 交易执行器线程数量 */
+	public int getTransactionThreads() {
+		return snapshot.get().transactionThreads;
+	}
+
+	/** 交易执行器等待队列大小 */
+	public int getTransactionQueueSize() {
+		return snapshot.get().transactionQueueSize;
+	}
+
+	/** 组织用户注册认证的最大并发数量 */
+	public int getEnrollConcurrency() {
+		return snapshot.get().enrollConcurrency;
+	}
+
+	/** 证书到期前多久重新认证（秒） */
+	public long getEnrollmentRenewBefore() {
+		return snapshot.get().enrollmentRenewBefore;
+	}
+
+	/** 证书到期检查间隔（秒） */
+	public long getEnrollmentRenewInterval() {
+		return snapshot.get().enrollmentRenewInterval;
+	}
+
+	/** 通道序列化检查模式：full、validate、skip */
+	public String getChannelSerializeCheck() {
+		return getProperty(CHANNEL_SERIALIZE_CHECK);
+	}
+
+	/** 多通道并发初始化的最大并发数量 */
+	public int getChannelInitConcurrency() {
+		return snapshot.get().channelInitConcurrency;
+	}
+
+	/** 节点已加入通道列表的缓存时间（秒） */
+	public long getChannelMembershipCacheTTL() {
+		return snapshot.get().channelMembershipCacheTTL;
+	}
+
+	/** 配置热加载，监听配置文件变化后自动重新加载配置 */
+	public boolean isConfigHotReload() {
+		return snapshot.get().configHotReload;
+	}
+
+	/** 查询路由，每次查询只发送到一个延迟最低的节点 */
+	public boolean isQueryRouting() {
+		return snapshot.get().queryRouting;
+	}
+
+	/** 查询和法定数量背书的对冲等待时间（毫秒），节点耗时样本不足时使用，小于等于0不对冲 */
+	public long getQueryHedgeDelay() {
+		return snapshot.get().queryHedgeDelay;
+	}
+
+	/** 查询路由和法定数量背书的对冲执行器线程数量 */
+	public int getHedgeThreads() {
+		return snapshot.get().hedgeThreads;
+	}
+
+	/** 法定数量背书模式下等待提议响应（包括对冲提议）的时间（毫秒） */
+	public long getQuorumWaitTime() {
+		return snapshot.get().quorumWaitTime;
+	}
+
+	/** 节点 gRPC 连接允许接收的最大消息（字节） */
+	public int getMaxInboundMessageSize() {
+		return snapshot.get().maxInboundMessageSize;
+	}
+
+	/** 分页查询每页记录数量 */
+	public int getQueryPageSize() {
+		return snapshot.get().queryPageSize;
+	}
+
+	/** 查询结果缓存的最大条数，小于等于0不缓存 */
+	public long getQueryCacheSize() {
+		return snapshot.get().queryCacheSize;
+	}
+
+	/** 查询结果缓存失效模式：namespace 按区块读写集涉及的 chaincode 失效，all 每个区块失效通道全部缓存 */
+	public String getQueryCacheInvalidation() {
+		return getProperty(QUERY_CACHE_INVALIDATION);
 	}
 
 	/** 节点配置 */
@@ -404,8 +671,27 @@ public class DefaultConfiguration {
 		}
 	}
 
+	/**
+	 * TLS 证书配置。每个节点只解析一次，缓存不可变的配置，证书文件变化后重新解析；
+	 * 文件变化检查有时间间隔，间隔内直接返回缓存配置的副本，调用方可以修改返回的配置
+	 */
 	public Properties getTLSCertProperties(final String type, final String name) {
+		String key = type + ":" + name;
+		
+		TLSDescriptor descriptor = tlsDescriptors.get(key);
+		if (descriptor == null || descriptor.isModified()) {
+			descriptor = resolveTLSCertProperties(type, name);
+			tlsDescriptors.put(key, descriptor);
+			
+			logger.debug("解析 TLS 证书配置：{}", key);
+		}
+		
+		return descriptor.toProperties();
+	}
+	
+	private TLSDescriptor resolveTLSCertProperties(final String type, final String name) {
 		Properties props = new Properties();
+		List<File> files = new ArrayList<>();
 
 		final String domainName = getDomainName(name);
 
@@ -435,14 +721,17 @@ public class DefaultConfiguration {
 			
 			props.setProperty("clientCertFile", clientCert.getAbsolutePath());
 			props.setProperty("clientKeyFile", clientKey.getAbsolutePath());
+			files.add(clientCert);
+			files.add(clientKey);
 		}
 
 		props.setProperty("pemFile", cert.getAbsolutePath());
+		files.add(cert);
 		props.setProperty("hostnameOverride", name);
 		props.setProperty("sslProvider", "openSSL");
 		props.setProperty("negotiationType", "TLS");
 		
-		return props;
+		return new TLSDescriptor(props, files);
 	}
 
 	/** configtxlator 配置转换工具URL配置 */
@@ -451,18 +740,17 @@ public class DefaultConfiguration {
 	}
 
 	public boolean isRunningAgainstFabric10() {
-		return getFabricConfigGeneratorVersion().contains("1.0");
+		return snapshot.get().fabricVersion.equals(FabricVersion.of("1.0"));
 	}
 	
 	public boolean isFabricVersionAtOrAfter(String version) {
-		double v = Double.parseDouble(this.getFabricConfigGeneratorVersion().substring(1));
-		if (Double.parseDouble(version) > v) {
-			return false;
-		}
-		
-		return true;
+		return isFabricVersionAtOrAfter(snapshot.get(), version);
     }
 
+	private static boolean isFabricVersionAtOrAfter(Snapshot snapshot, String version) {
+		return snapshot.fabricVersion.isAtOrAfter(version);
+	}
+
     public boolean isFabricVersionBefore(String version) {
 
         return !isFabricVersionAtOrAfter(version);
@@ -470,23 +758,41 @@ public class DefaultConfiguration {
 
 	/** 获取全部组织 */
 	public Collection<Organization> getOrganizations() {
-		return Collections.unmodifiableCollection(ORGANIZATION_RESOURCES.values());
+		return Collections.unmodifiableCollection(snapshot.get().organizations.values());
 	}
 
 	/** 获取组织 */
 	public Organization getOrganization(String name) {
-		return ORGANIZATION_RESOURCES.get(name);
+		return snapshot.get().organizations.get(name);
+	}
+	
+	/** 获取节点所属组织的 MSP，节点不在组织配置中时返回null */
+	public String getPeerMSPID(String peerName) {
+		return snapshot.get().peerMSPIDs.get(peerName);
 	}
 	
 	public String getFabricConfigGeneratorVersion() {
-		return getSDKProperty(FABRIC_CONFIG_GENERATOR_VERSION, System.getenv("FAB_CONFIG_GEN_VERS"));
+		return getFabricConfigGeneratorVersion(snapshot.get());
+	}
+	
+	/** 已解析的 Fabric 配置版本 */
+	public FabricVersion getFabricVersion() {
+		return snapshot.get().fabricVersion;
+	}
+	
+	private static String getFabricConfigGeneratorVersion(Snapshot snapshot) {
+		return snapshot.getProperty(FABRIC_CONFIG_GENERATOR_VERSION, System.getenv("FAB_CONFIG_GEN_VERS"));
 	}
 	
 	/** crypto-config & channel-artifacts 根目录 */
 	public String getCryptoTxConfigRootPath() {
-		String path = getCommonConfigRootPath();
-		String netconfig = getSDKProperty(CRYPTO_TX_CONFIG_ROOT_PATH, "/e2e-2Orgs/");
-		String version = getFabricConfigGeneratorVersion();
+		return getCryptoTxConfigRootPath(snapshot.get());
+	}
+	
+	private static String getCryptoTxConfigRootPath(Snapshot snapshot) {
+		String path = snapshot.getProperty(COMMON_CONFIG_ROOT_PATH);
+		String netconfig = snapshot.getProperty(CRYPTO_TX_CONFIG_ROOT_PATH, "/e2e-2Orgs/");
+		String version = getFabricConfigGeneratorVersion(snapshot);
 		return Paths.get(path, netconfig, version).toString();
 	}
 	
@@ -519,7 +825,7 @@ public class DefaultConfiguration {
 	 * 如果host不是localhost，将替换 network-config.yaml 中的host地址
 	 */
 	public File getNetworkConfigFile() {
-		String fileName = runningTLS ? "network-config-tls.yaml" : "network-config.yaml";
+		String fileName = snapshot.get().runningTLS ? "network-config-tls.yaml" : "network-config.yaml";
 		String filePath = getNetworkConfigDirFilePath(); //"src/test/fixture/sdkintegration/network_configs/";
 		
 		File networkConfig = new File(filePath, fileName);
@@ -564,4 +870,150 @@ public class DefaultConfiguration {
 
 		return networkConfig;
 	}
+
+	/**
+	 * 不可变的配置快照，构建完成后通过原子引用整体发布。
+	 * 配置保存在不可变的 Map 中，避免 Properties（Hashtable）读取时的同步锁竞争
+	 */
+	private static final class Snapshot {
+		
+		/** SDK 配置 */
+		private final Map<String, String> properties;
+		/** ORG 配置，只在发布前填充 */
+		private final Map<String, Organization> organizations = new HashMap<>();
+		/** 节点名称 -> 所属组织的 MSP，只在发布前填充 */
+		private final Map<String, String> peerMSPIDs = new HashMap<>();
+		/** 配置文件，从 ClassPath 加载时为null */
+		private final File configFile;
+		/** 加载时配置文件的修改时间 */
+		private final long lastModified;
+		
+		/** 开启TLS证书，也就是https(grpcs)协议和http(grpc)协议之间的切换 */
+		private final boolean runningTLS;
+		private final boolean runningFabricCATLS;
+		private final boolean runningFabricTLS;
+		
+		/** 加载时解析好的配置，读取时不再重复解析 */
+		private final FabricVersion fabricVersion;
+		private final int transactionWaitTime;
+		private final int deployWaitTime;
+		private final long proposalWaitTime;
+		private final int batchMaxInFlight;
+		private final int transactionThreads;
+		private final int transactionQueueSize;
+		private final int enrollConcurrency;
+		private final long enrollmentRenewBefore;
+		private final long enrollmentRenewInterval;
+		private final int channelInitConcurrency;
+		private final long channelMembershipCacheTTL;
+		private final boolean configHotReload;
+		private final boolean queryRouting;
+		private final long queryHedgeDelay;
+		private final int hedgeThreads;
+		private final long quorumWaitTime;
+		private final int maxInboundMessageSize;
+		private final int queryPageSize;
+		private final long queryCacheSize;
+		
+		private Snapshot(Properties props, File configFile, boolean runningTLS) {
+			Map<String, String> properties = new HashMap<>();
+			for (String key : props.stringPropertyNames()) {
+				properties.put(key, props.getProperty(key));
+			}
+			
+			this.properties = Collections.unmodifiableMap(properties);
+			this.configFile = configFile;
+			this.lastModified = configFile == null ? 0 : configFile.lastModified();
+			this.runningTLS = runningTLS;
+			this.runningFabricCATLS = runningTLS;
+			this.runningFabricTLS = runningTLS;
+			
+			this.fabricVersion = FabricVersion.of(getFabricConfigGeneratorVersion(this));
+			this.transactionWaitTime = Integer.parseInt(getNumber(INVOKE_WAIT_TIME));
+			this.deployWaitTime = Integer.parseInt(getNumber(DEPLOY_WAIT_TIME));
+			this.proposalWaitTime = Integer.parseInt(getNumber(PROPOSAL_WAIT_TIME));
+			this.batchMaxInFlight = Integer.parseInt(getNumber(BATCH_MAX_IN_FLIGHT));
+			this.transactionThreads = Integer.parseInt(getNumber(TRANSACTION_THREADS));
+			this.transactionQueueSize = Integer.parseInt(getNumber(TRANSACTION_QUEUE_SIZE));
+			this.enrollConcurrency = Integer.parseInt(getNumber(ENROLL_CONCURRENCY));
+			this.enrollmentRenewBefore = Long.parseLong(getNumber(ENROLLMENT_RENEW_BEFORE));
+			this.enrollmentRenewInterval = Long.parseLong(getNumber(ENROLLMENT_RENEW_INTERVAL));
+			this.channelInitConcurrency = Integer.parseInt(getNumber(CHANNEL_INIT_CONCURRENCY));
+			this.channelMembershipCacheTTL = Long.parseLong(getNumber(CHANNEL_MEMBERSHIP_CACHE_TTL));
+			this.configHotReload = Boolean.parseBoolean(getProperty(CONFIG_HOT_RELOAD));
+			this.queryRouting = Boolean.parseBoolean(getProperty(QUERY_ROUTING));
+			this.queryHedgeDelay = Long.parseLong(getNumber(QUERY_HEDGE_DELAY));
+			this.hedgeThreads = Integer.parseInt(getNumber(HEDGE_THREADS));
+			this.quorumWaitTime = Long.parseLong(getNumber(QUORUM_WAIT_TIME));
+			this.maxInboundMessageSize = Integer.parseInt(getNumber(MAX_INBOUND_MESSAGE_SIZE));
+			this.queryPageSize = Integer.parseInt(getNumber(QUERY_PAGE_SIZE));
+			this.queryCacheSize = Long.parseLong(getNumber(QUERY_CACHE_SIZE));
+		}
+		
+		/** 数字配置，为空或格式错误时加载失败 */
+		private String getNumber(String key) {
+			String value = properties.get(key);
+			if (value == null || !value.trim().matches("-?\\d+")) {
+				throw new IllegalArgumentException(String.format("配置 %s 不是有效的数字：%s", key, value));
+			}
+			return value.trim();
+		}
+		
+		private String getProperty(String key) {
+			return properties.get(key);
+		}
+		
+		private String getProperty(String key, String defaultValue) {
+			String value = properties.get(key);
+			return value == null ? defaultValue : value;
+		}
+	}
+
+	/**
+	 * 解析后的节点 TLS 配置，记录证书文件的修改时间用于判断文件变化
+	 */
+	private static final class TLSDescriptor {
+		
+		private final Map<String, String> properties;
+		private final List<File> files;
+		private final long[] lastModified;
+		private volatile long checkedAt;
+		
+		private TLSDescriptor(Properties props, List<File> files) {
+			Map<String, String> properties = new HashMap<>();
+			for (String key : props.stringPropertyNames()) {
+				properties.put(key, props.getProperty(key));
+			}
+			
+			this.properties = Collections.unmodifiableMap(properties);
+			this.files = Collections.unmodifiableList(files);
+			this.lastModified = new long[files.size()];
+			for (int i = 0; i < files.size(); i++) {
+				this.lastModified[i] = files.get(i).lastModified();
+			}
+			this.checkedAt = System.currentTimeMillis();
+		}
+		
+		/** 距上次检查超过间隔时检查证书文件是否变化 */
+		private boolean isModified() {
+			long now = System.currentTimeMillis();
+			if (now - checkedAt < TLS_CHECK_INTERVAL) {
+				return false;
+			}
+			checkedAt = now;
+			
+			for (int i = 0; i < files.size(); i++) {
+				if (files.get(i).lastModified() != lastModified[i]) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private Properties toProperties() {
+			Properties props = new Properties();
+			props.putAll(properties);
+			return props;
+		}
+	}
 }
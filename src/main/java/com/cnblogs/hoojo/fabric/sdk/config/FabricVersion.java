@@ -0,0 +1,102 @@
+package com.cnblogs.hoojo.fabric.sdk.config;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <b>function:</b> Fabric 版本号，按语义版本逐段比较数字（1.10 大于 1.9），缺少的段按 0 处理（1.3 等于 1.3.0）
+ * @author hoojo
+ * @createDate 2018年9月12日 上午11:20:36
+ * @file FabricVersion.java
+ * @package com.cnblogs.hoojo.fabric.sdk.config
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public final class FabricVersion implements Comparable<FabricVersion> {
+
+	/** 已解析的版本，版本比较的参数大多是常量，只解析一次 */
+	private static final Map<String, FabricVersion> VERSIONS = new ConcurrentHashMap<>();
+
+	private final String version;
+	private final int[] parts;
+
+	private FabricVersion(String version, int[] parts) {
+		this.version = version;
+		this.parts = parts;
+	}
+
+	/** 获取版本，支持 v 前缀：v1.0、1.3、1.3.0 */
+	public static FabricVersion of(String version) {
+		Preconditions.checkArgument(version != null, "版本号不能为空");
+
+		return VERSIONS.computeIfAbsent(version, FabricVersion::parse);
+	}
+
+	private static FabricVersion parse(String version) {
+		String value = version.trim();
+		if (value.startsWith("v") || value.startsWith("V")) {
+			value = value.substring(1);
+		}
+
+		String[] items = value.split("\\.");
+		int[] parts = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			try {
+				parts[i] = Integer.parseInt(items[i]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("版本号格式错误：" + version, e);
+			}
+			Preconditions.checkArgument(parts[i] >= 0, "版本号格式错误：%s", version);
+		}
+
+		return new FabricVersion(version, parts);
+	}
+
+	/** 当前版本是否等于或高于指定版本 */
+	public boolean isAtOrAfter(String version) {
+		return compareTo(of(version)) >= 0;
+	}
+
+	/** 当前版本是否低于指定版本 */
+	public boolean isBefore(String version) {
+		return compareTo(of(version)) < 0;
+	}
+
+	@Override
+	public int compareTo(FabricVersion other) {
+		int length = Math.max(parts.length, other.parts.length);
+		for (int i = 0; i < length; i++) {
+			int a = i < parts.length ? parts[i] : 0;
+			int b = i < other.parts.length ? other.parts[i] : 0;
+			if (a != b) {
+				return Integer.compare(a, b);
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof FabricVersion && compareTo((FabricVersion) obj) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		// 忽略末尾的 0，保证 1.3 和 1.3.0 的 hashCode 一致
+		int length = parts.length;
+		while (length > 0 && parts[length - 1] == 0) {
+			length--;
+		}
+		return Arrays.hashCode(Arrays.copyOf(parts, length));
+	}
+
+	@Override
+	public String toString() {
+		return version;
+	}
+}
@@ -2,8 +2,14 @@ package com.cnblogs.hoojo.fabric.sdk.core;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.hyperledger.fabric.sdk.BlockEvent.TransactionEvent;
 import org.hyperledger.fabric.protos.peer.Query.ChaincodeInfo;
@@ -17,6 +23,7 @@ import com.cnblogs.hoojo.fabric.sdk.config.DefaultConfiguration;
 import com.cnblogs.hoojo.fabric.sdk.entity.SendTransactionEntity;
 import com.cnblogs.hoojo.fabric.sdk.log.ApplicationLogging;
 import com.cnblogs.hoojo.fabric.sdk.model.Organization;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * 多线程交易 & 交易事件 管理抽象服务
@@ -31,13 +38,57 @@ import com.cnblogs.hoojo.fabric.sdk.model.Organization;
  */
 public abstract class AbstractTransactionManager extends ApplicationLogging {
 
+	/** 异步交易超时调度器，全局共享 */
+	private static final ScheduledThreadPoolExecutor TIMEOUT_SCHEDULER = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat("transaction-timeout-%d").setDaemon(true).build());
+	
+	static {
+		// 交易完成后取消的超时任务立即移除，避免大量在途交易堆积任务
+		TIMEOUT_SCHEDULER.setRemoveOnCancelPolicy(true);
+	}
+	
 	protected DefaultConfiguration config;
 	protected HFClient client;
+	/**
+	 * 异步交易流水线执行器，背书提议、分页查询预取等阻塞操作都在此执行，对冲提议和查询路由使用 TransactionManager 独立的对冲执行器。
+	 * 执行器拒绝任务时异步交易返回失败的 Future，分页查询不再预取，都不会在调用方线程执行背书提议
+	 */
+	protected Executor executor;
 	
 	public AbstractTransactionManager(DefaultConfiguration config, HFClient client) {
+		this(config, client, null);
+	}
+	
+	public AbstractTransactionManager(DefaultConfiguration config, HFClient client, Executor executor) {
 		super();
 		this.config = config;
 		this.client = client;
+		this.executor = executor != null ? executor : newDefaultExecutor();
+	}
+	
+	/**
+	 * 默认执行器：最大线程数按配置限制的守护线程池，每个阻塞的背书提议占用一个线程，空闲线程自动回收。
+	 * 线程全忙时任务在有界队列中等待，队列也满时拒绝任务（背压），由 submitAsync 返回失败的 Future，调用方线程不会被占用；
+	 * 法定数量背书和查询路由的对冲任务提交到独立的对冲执行器，本执行器的任务不会再向本执行器提交任务并等待，排队不会饿死
+	 * @author hoojo
+	 * @createDate 2018年7月2日 上午10:12:31
+	 */
+	private Executor newDefaultExecutor() {
+		int threads = Math.max(1, config.getTransactionThreads());
+		
+		int queueSize = Math.max(1, config.getTransactionQueueSize());
+		
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), new ThreadFactoryBuilder().setNameFormat(getClass().getSimpleName() + "-%d").setDaemon(true).build(), new ThreadPoolExecutor.AbortPolicy());
+		pool.allowCoreThreadTimeOut(true);
+		
+		return pool;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
 	}
 
 	/**
@@ -46,7 +97,10 @@ public abstract class AbstractTransactionManager extends ApplicationLogging {
 	 * @createDate 2018年6月15日 上午11:54:46
 	 */
 	public TransactionEvent sendTransaction(Channel channel, Collection<ProposalResponse> responses, SendTransactionEntity transaction) throws Exception {
-		return sendTransaction(responses, transaction, channel).get(config.getTransactionWaitTime(), TimeUnit.SECONDS);
+		if (transaction != null && transaction.getTimeout() > 0) {
+			return sendTransaction(responses, transaction, channel).get(transaction.getTimeout(), TimeUnit.MILLISECONDS);
+		}
+		return sendTransaction(responses, transaction, channel).get(config.getTransactionWaitTime(), TimeUnit.MILLISECONDS);
 	}
 	
 	/**
@@ -74,6 +128,44 @@ public abstract class AbstractTransactionManager extends ApplicationLogging {
 		return future;
 	}
 	
+	/**
+	 * 在截止时间内提交交易：SendTransactionEntity 设置了超时时间时与调用截止时间取较早者，
+	 * 提交前已超时直接失败，交易事件在剩余时间内未到达时以 TimeoutException 异常完成
+	 * @author hoojo
+	 * @createDate 2018年9月25日 上午11:02:47
+	 */
+	protected CompletableFuture<TransactionEvent> sendTransaction(Collection<ProposalResponse> responses, SendTransactionEntity transaction, Channel channel, Deadline deadline) throws Exception {
+		if (transaction != null) {
+			deadline = Deadline.min(deadline, Deadline.after(transaction.getTimeout()));
+		}
+		if (deadline == null) {
+			return sendTransaction(responses, transaction, channel);
+		}
+		
+		deadline.check("提交Orderer");
+		CompletableFuture<TransactionEvent> future = sendTransaction(responses, transaction, channel);
+		
+		return withTimeout(future, Math.max(1, deadline.remaining()), TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * 为异步交易设置超时时间，超时后以 TimeoutException 异常完成
+	 * @author hoojo
+	 * @createDate 2018年7月3日 下午2:36:10
+	 */
+	protected <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+		if (future.isDone()) {
+			return future;
+		}
+		
+		ScheduledFuture<?> task = TIMEOUT_SCHEDULER.schedule(() -> {
+			return future.completeExceptionally(new TimeoutException(String.format("交易在 %d %s 内未完成", timeout, unit)));
+		}, timeout, unit);
+		future.whenComplete((result, e) -> task.cancel(false));
+		
+		return future;
+	}
+	
 	/**
 	 * 检查Chaincode在peer上是否成功安装
 	 * @author hoojo
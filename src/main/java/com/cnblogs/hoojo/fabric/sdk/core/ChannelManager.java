@@ -5,12 +5,23 @@ import static java.lang.String.format;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.lang3.StringUtils;
 import org.hyperledger.fabric.sdk.Channel;
 import org.hyperledger.fabric.sdk.Channel.PeerOptions;
 import org.hyperledger.fabric.sdk.ChannelConfiguration;
@@ -21,10 +32,16 @@ import org.hyperledger.fabric.sdk.Peer;
 import org.hyperledger.fabric.sdk.Peer.PeerRole;
 
 import com.cnblogs.hoojo.fabric.sdk.config.DefaultConfiguration;
+import com.cnblogs.hoojo.fabric.sdk.core.EndpointRegistry.Endpoint;
+import com.cnblogs.hoojo.fabric.sdk.core.EndpointRegistry.EndpointType;
 import com.cnblogs.hoojo.fabric.sdk.log.ApplicationLogging;
 import com.cnblogs.hoojo.fabric.sdk.model.Organization;
-import com.cnblogs.hoojo.fabric.sdk.persistence.KeyValueFileStore;
+import com.cnblogs.hoojo.fabric.sdk.persistence.KeyValueStore;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * 通道管理服务
@@ -39,15 +56,47 @@ import com.google.common.collect.Lists;
  */
 public class ChannelManager extends ApplicationLogging {
 
-	private KeyValueFileStore store;
+	private KeyValueStore store;
 	private DefaultConfiguration config;
 	private HFClient client;
+	/** 多通道并发初始化执行器 */
+	private Executor executor;
+	/** 节点查询执行器，与通道初始化执行器分开，避免初始化任务等待查询时占满线程；线程数量与通道初始化并发数相同 */
+	private Executor queryExecutor;
+	/** 节点URL -> 已加入的通道 */
+	private Cache<String, Set<String>> channelMembership;
+	/** 节点连接注册表 */
+	private EndpointRegistry endpoints = new EndpointRegistry();
+
+	public ChannelManager(DefaultConfiguration config, KeyValueStore store, HFClient client) {
+		this(config, store, client, null);
+	}
 
-	public ChannelManager(DefaultConfiguration config, KeyValueFileStore store, HFClient client) {
+	public ChannelManager(DefaultConfiguration config, KeyValueStore store, HFClient client, Executor executor) {
 		this.config = config;
 		this.store = store;
 
 		this.client = client;
+		
+		int concurrency = Math.max(1, config.getChannelInitConcurrency());
+		if (executor == null) {
+			executor = newBoundedExecutor(concurrency, getClass().getSimpleName() + "-%d");
+		}
+		this.executor = executor;
+		this.queryExecutor = newBoundedExecutor(concurrency, getClass().getSimpleName() + "-query-%d");
+		this.channelMembership = CacheBuilder.newBuilder().expireAfterWrite(config.getChannelMembershipCacheTTL(), TimeUnit.SECONDS).build();
+	}
+
+	/**
+	 * 固定大小的守护线程池，任务排队执行，空闲线程超时自动回收，不需要关闭
+	 * @author hoojo
+	 * @createDate 2018年7月19日 上午9:32:08
+	 */
+	private Executor newBoundedExecutor(int threads, String nameFormat) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+		pool.allowCoreThreadTimeOut(true);
+		
+		return pool;
 	}
 
 	/**
@@ -56,19 +105,86 @@ public class ChannelManager extends ApplicationLogging {
 	 * @createDate 2018年6月25日 下午12:58:27
 	 */
 	public Channel initialize(String channelName, Organization org) throws Exception {
-		logger.info("initialize channel -> Organization: {} , Constructing channel: {}", org.getName(), channelName);
-
 		/** 设置 peer 管理员User上下文 */
 		client.setUserContext(org.getPeerAdmin());
 		//client.setUserContext(org.getUser("user1"));
 
+		return initializeChannel(channelName, org);
+	}
+
+	/**
+	 * 并发初始化多个通道，用户上下文只设置一次，各通道在执行器上并行创建和初始化。
+	 * 单个通道失败不影响其他通道，全部完成后汇总失败的通道抛出异常
+	 * <p>
+	 * Fabric SDK 中 Peer、Orderer、EventHub 对象只能属于一个通道，每个通道仍需各自创建
+	 * </p>
+	 * @author hoojo
+	 * @createDate 2018年7月18日 上午10:15:42
+	 * @param channelNames 通道名称
+	 * @param org Organization
+	 * @return 通道名称 -> 通道，按参数顺序排列
+	 */
+	public Map<String, Channel> initializeAll(Collection<String> channelNames, Organization org) throws Exception {
+		logger.info("initialize channels -> Organization: {} , channels: {}", org.getName(), channelNames);
+		long start = System.currentTimeMillis();
+		
+		/** 设置 peer 管理员User上下文 */
+		client.setUserContext(org.getPeerAdmin());
+
+		Map<String, CompletableFuture<Channel>> futures = new LinkedHashMap<>();
+		for (String channelName : channelNames) {
+			futures.put(channelName, CompletableFuture.supplyAsync(() -> {
+				try {
+					return initializeChannel(channelName, org);
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, executor));
+		}
+		
+		Map<String, Channel> channels = new LinkedHashMap<>();
+		List<String> failedChannels = new ArrayList<>();
+		List<Throwable> causes = new ArrayList<>();
+		for (Map.Entry<String, CompletableFuture<Channel>> entry : futures.entrySet()) {
+			try {
+				channels.put(entry.getKey(), entry.getValue().join());
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause() == null ? e : e.getCause();
+				logger.error("通道 {} 初始化失败：{}", entry.getKey(), cause.getMessage());
+
+				failedChannels.add(entry.getKey());
+				causes.add(cause);
+			}
+		}
+		
+		logger.info("Organization: {} , Finished initialization channels：{}，耗时：{}ms", org.getName(), channels.keySet(), System.currentTimeMillis() - start);
+		
+		if (!causes.isEmpty()) {
+			RuntimeException failure = new RuntimeException(format("通道初始化失败：%s", failedChannels), causes.get(0));
+			for (Throwable cause : causes.subList(1, causes.size())) {
+				failure.addSuppressed(cause);
+			}
+			throw failure;
+		}
+		
+		return channels;
+	}
+
+	/**
+	 * 恢复或创建通道并初始化，调用前需设置用户上下文
+	 * @author hoojo
+	 * @createDate 2018年7月18日 上午10:05:18
+	 */
+	private Channel initializeChannel(String channelName, Organization org) throws Exception {
+		logger.info("initialize channel -> Organization: {} , Constructing channel: {}", org.getName(), channelName);
+
 		/** 恢复或创建通道 */
 		Channel channel = store.getChannel(client, channelName);
 		if (channel == null) {
 			try {
 				/** 创建 Orderer 共识服务 */
 				logger.info("create orderer service");
-				List<Orderer> orderers = createOrderer(org);
+				List<Orderer> orderers = createOrderer(channelName, org);
 
 				/** 选择第一个 Orderer 创建通道 */
 				Orderer anOrderer = orderers.iterator().next();
@@ -106,13 +222,15 @@ public class ChannelManager extends ApplicationLogging {
 		logger.info("initialize channel: {}", channelName);
 		channel.initialize();
 
-		channel = checkChannelSerialize(channel);
+		SerializedChannel serialized = checkChannelSerialize(channel);
+		channel = serialized.channel;
 
 		checkChannel(channelName, channel);
 		
 		logger.info("Organization: {} , Finished initialization channel： {}", org.getName(), channelName);
 
-		store.saveChannel(channel);
+		// 复用检查时的序列化数据，跳过检查时再序列化
+		store.saveChannel(channelName, serialized.bytes != null ? serialized.bytes : channel.serializeChannel());
 		return channel;
 	}
 
@@ -159,7 +277,7 @@ public class ChannelManager extends ApplicationLogging {
 		/** 初始化 */
 		channel.initialize();
 
-		channel = checkChannelSerialize(channel);
+		channel = checkChannelSerialize(channel).channel;
 
 		checkChannel(channelName, channel);
 
@@ -184,7 +302,7 @@ public class ChannelManager extends ApplicationLogging {
 
 		logger.info("create orderer service");
 		/** 创建 Orderer 共识服务 */
-		List<Orderer> orderers = createOrderer(org);
+		List<Orderer> orderers = createOrderer(channelName, org);
 
 		/** 选择第一个 Orderer 创建通道 */
 		Orderer anOrderer = orderers.iterator().next();
@@ -217,7 +335,7 @@ public class ChannelManager extends ApplicationLogging {
 		channel.initialize();
 		logger.info("Organization: {} , Finished initialization channel： {}", org.getName(), channelName);
 
-		return checkChannelSerialize(channel);
+		return checkChannelSerialize(channel).channel;
 	}
 
 	/**
@@ -225,7 +343,7 @@ public class ChannelManager extends ApplicationLogging {
 	 * @author hoojo
 	 * @createDate 2018年6月13日 下午4:33:20
 	 */
-	private Orderer createOrderer(String ordererName, Organization org) throws Exception {
+	private Orderer createOrderer(String channelName, String ordererName, Organization org) throws Exception {
 		String grpcURL = org.getOrdererLocation(ordererName);
 		logger.info("构建 Orderer 服务：{}，URL：{}", ordererName, grpcURL);
 
@@ -236,7 +354,8 @@ public class ChannelManager extends ApplicationLogging {
 		ordererProps.put("grpc.NettyChannelBuilderOption.keepAliveTimeout", new Object[] { 8L, TimeUnit.SECONDS });
 		ordererProps.put("grpc.NettyChannelBuilderOption.keepAliveWithoutCalls", new Object[] { true });
 
-		Orderer orderer = client.newOrderer(ordererName, grpcURL, ordererProps);
+		Endpoint endpoint = endpoints.acquire(channelName, EndpointType.ORDERER, ordererName, grpcURL, ordererProps);
+		Orderer orderer = client.newOrderer(ordererName, grpcURL, endpoint.getProperties());
 
 		return orderer;
 	}
@@ -246,12 +365,12 @@ public class ChannelManager extends ApplicationLogging {
 	 * @author hoojo
 	 * @createDate 2018年6月13日 下午4:33:20
 	 */
-	private List<Orderer> createOrderer(Organization org) throws Exception {
+	private List<Orderer> createOrderer(String channelName, Organization org) throws Exception {
 		logger.info("开始创建 Orderer 服务……");
 		List<Orderer> orderers = Lists.newLinkedList();
 
 		for (String ordererName : org.getOrdererNames()) {
-			orderers.add(createOrderer(ordererName, org));
+			orderers.add(createOrderer(channelName, ordererName, org));
 		}
 
 		return orderers;
@@ -268,7 +387,7 @@ public class ChannelManager extends ApplicationLogging {
 		for (String ordererName : org.getOrdererNames()) {
 			logger.debug("Channel add Orderer: {}", ordererName);
 
-			channel.addOrderer(createOrderer(ordererName, org));
+			channel.addOrderer(createOrderer(channel.getName(), ordererName, org));
 		}
 	}
 
@@ -314,10 +433,11 @@ public class ChannelManager extends ApplicationLogging {
 			logger.info("创建对等节点:{}，URL：{}", peerName, grpcURL);
 
 			Properties peerProps = config.getPeerProperties(peerName);
-			peerProps.put("grpc.NettyChannelBuilderOption.maxInboundMessageSize", 9000000);
+			peerProps.put("grpc.NettyChannelBuilderOption.maxInboundMessageSize", config.getMaxInboundMessageSize());
 
 			// 创建节点
-			Peer peer = client.newPeer(peerName, grpcURL, peerProps);
+			Endpoint endpoint = endpoints.acquire(channel.getName(), EndpointType.PEER, peerName, grpcURL, peerProps);
+			Peer peer = client.newPeer(peerName, grpcURL, endpoint.getProperties());
 
 			PeerOptions options = PeerOptions.createPeerOptions();
 			if (config.isFabricVersionAtOrAfter("1.3")) {
@@ -358,7 +478,8 @@ public class ChannelManager extends ApplicationLogging {
 			eventHubProps.put("grpc.NettyChannelBuilderOption.keepAliveTime", new Object[] { 5L, TimeUnit.MINUTES });
 			eventHubProps.put("grpc.NettyChannelBuilderOption.keepAliveTimeout", new Object[] { 8L, TimeUnit.SECONDS });
 
-			EventHub eventHub = client.newEventHub(eventHubName, grpcURL, eventHubProps);
+			Endpoint endpoint = endpoints.acquire(channel.getName(), EndpointType.EVENT_HUB, eventHubName, grpcURL, eventHubProps);
+			EventHub eventHub = client.newEventHub(eventHubName, grpcURL, endpoint.getProperties());
 			logger.trace("create EventHub name: {}, url: {}, conntime: {}", eventHub.getName(), eventHub.getUrl(), eventHub.getConnectedTime());
 
 			channel.addEventHub(eventHub);
@@ -367,14 +488,25 @@ public class ChannelManager extends ApplicationLogging {
 
 	/**
 	 * 检查“序列化/反序列化”通道。 可以进行持久化存储，方便下次直接从缓存中恢复通道
+	 * <p>
+	 * 检查模式由配置 ChannelSerializeCheck 决定：
+	 * <li>full：序列化后关闭通道，再反序列化并重新初始化，会断开并重建所有 Peer、Orderer 连接，用于开发调试</li>
+	 * <li>validate：只检查通道能否序列化，不关闭通道，序列化数据用于持久化存储</li>
+	 * <li>skip：不检查</li>
+	 * </p>
 	 * @author hoojo
 	 * @throws IOException
 	 * @throws org.hyperledger.fabric.sdk.exception.InvalidArgumentException
 	 * @createDate 2018年6月13日 下午4:26:08
 	 */
-	private Channel checkChannelSerialize(Channel channel) throws Exception {
-		logger.info("检查通道可否序列化：{}", channel.getName());
+	private SerializedChannel checkChannelSerialize(Channel channel) throws Exception {
+		SerializeCheck mode = SerializeCheck.of(config.getChannelSerializeCheck());
+		logger.info("检查通道可否序列化：{}，模式：{}", channel.getName(), mode);
 
+		if (mode == SerializeCheck.SKIP) {
+			return new SerializedChannel(channel, null);
+		}
+		
 		if (!channel.isInitialized()) {
 			logger.warn("通道还未初始化操作");
 		}
@@ -384,9 +516,14 @@ public class ChannelManager extends ApplicationLogging {
 
 		// 检查通道是否可以序列化，可以进行持久化存储，方便下次直接从缓存中恢复通道
 		byte[] serializedChannelBytes = channel.serializeChannel();
+		logger.debug("serializedChannelBytes: {}", serializedChannelBytes.length);
+		
+		if (mode == SerializeCheck.VALIDATE) {
+			return new SerializedChannel(channel, serializedChannelBytes);
+		}
+		
 		// 关闭所有释放资源的频道
 		channel.shutdown(true);
-		logger.debug("serializedChannelBytes: {}", serializedChannelBytes.length);
 
 		// 从通道序列化数据中恢复通道
 		channel = client.deSerializeChannel(serializedChannelBytes).initialize();
@@ -394,25 +531,106 @@ public class ChannelManager extends ApplicationLogging {
 		checkState(channel.isInitialized(), "通道未初始化");
 		checkState(!channel.isShutdown(), "通道被关闭");
 
-		return channel;
+		return new SerializedChannel(channel, serializedChannelBytes);
 	}
 
 	/**
-	 * 检查通道在Peer节点上是否安装
+	 * 检查通道在Peer节点上是否安装。各节点并发查询，节点已加入的通道列表按节点URL缓存，
+	 * 多个通道检查同一节点时只查询一次；缓存中没有该通道时重新查询一次，避免刚加入的通道误判
 	 * @author hoojo
 	 * @createDate 2018年6月25日 下午1:01:43
 	 */
 	private void checkChannel(String channelName, Channel channel) throws Exception {
 		logger.info("检查通道中是否包含通道：{}", channelName);
 
-		// 查找指定通道是否在Peer节点中存在
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
 		for (Peer peer : channel.getPeers()) {
-			Set<String> channels = client.queryChannels(peer);
-			logger.debug("通过对等节点：{} 找到通道：{}", peer.getName(), channels);
+			futures.add(CompletableFuture.runAsync(() -> {
+				Set<String> channels = queryChannels(peer, false);
+				if (!channels.contains(channelName)) {
+					channels = queryChannels(peer, true);
+				}
+				logger.debug("通过对等节点：{} 找到通道：{}", peer.getName(), channels);
 
-			if (!channels.contains(channelName)) {
-				throw new AssertionError(format("对等节点  %s 中没有通道 %s ", peer.getName(), channelName));
+				if (!channels.contains(channelName)) {
+					throw new AssertionError(format("对等节点  %s 中没有通道 %s ", peer.getName(), channelName));
+				}
+			}, queryExecutor));
+		}
+		
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
 			}
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+	
+	/**
+	 * 查询节点已加入的通道，同一节点的并发查询只发送一次请求
+	 * @author hoojo
+	 * @createDate 2018年7月19日 上午9:46:12
+	 * @param peer 节点
+	 * @param refresh 是否忽略缓存重新查询
+	 */
+	private Set<String> queryChannels(Peer peer, boolean refresh) {
+		if (refresh) {
+			channelMembership.invalidate(peer.getUrl());
+		}
+		
+		try {
+			return channelMembership.get(peer.getUrl(), () -> client.queryChannels(peer));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new CompletionException(e.getCause());
+		}
+	}
+	
+	/**
+	 * 关闭通道，释放通道的所有节点连接和对端点的引用，并清除空闲超时的端点
+	 * @author hoojo
+	 * @createDate 2018年7月20日 上午11:02:37
+	 */
+	public void releaseChannel(Channel channel) {
+		logger.info("释放通道：{}", channel.getName());
+
+		channel.shutdown(true);
+		endpoints.release(channel.getName());
+		endpoints.evictIdle();
+	}
+	
+	public EndpointRegistry getEndpointRegistry() {
+		return endpoints;
+	}
+	
+	/** 清除节点通道列表缓存 */
+	public void invalidateChannelMembership() {
+		channelMembership.invalidateAll();
+	}
+
+	/**
+	 * 通道序列化检查模式
+	 */
+	private enum SerializeCheck {
+		FULL, VALIDATE, SKIP;
+		
+		private static SerializeCheck of(String mode) {
+			return StringUtils.isBlank(mode) ? VALIDATE : valueOf(mode.trim().toUpperCase());
+		}
+	}
+	
+	/**
+	 * 检查后的通道和序列化数据，跳过检查时序列化数据为空
+	 */
+	private static final class SerializedChannel {
+		
+		private final Channel channel;
+		private final byte[] bytes;
+		
+		private SerializedChannel(Channel channel, byte[] bytes) {
+			this.channel = channel;
+			this.bytes = bytes;
 		}
 	}
 }
@@ -0,0 +1,80 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <b>function:</b> 调用截止时间，一次调用的超时时间在背书提议、提交Orderer、等待交易事件各阶段之间分配，
+ * 每个阶段只能使用剩余的时间，超过截止时间的阶段立即失败，不再占用线程等待
+ * @author hoojo
+ * @createDate 2018年9月25日 上午10:08:34
+ * @file Deadline.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public final class Deadline {
+
+	private final long deadlineNanos;
+	private final long timeout;
+
+	private Deadline(long timeout) {
+		this.timeout = timeout;
+		this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+	}
+
+	/**
+	 * 从现在开始 timeout 毫秒后的截止时间
+	 * @return 截止时间，timeout 小于等于0时返回null，表示使用全局配置
+	 */
+	public static Deadline after(long timeout) {
+		return timeout > 0 ? new Deadline(timeout) : null;
+	}
+
+	/** 剩余时间（毫秒），已超时返回0 */
+	public long remaining() {
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+	}
+
+	public boolean isExpired() {
+		return deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	/** 不超过剩余时间的等待时间（毫秒） */
+	public long cap(long waitTime) {
+		return Math.min(waitTime, remaining());
+	}
+
+	/**
+	 * 按比例从剩余时间中分出一个阶段的截止时间，其余时间留给后续阶段
+	 * @param ratio 阶段占剩余时间的比例，0~1
+	 */
+	public Deadline split(double ratio) {
+		return new Deadline(Math.max(1, (long) (remaining() * ratio)));
+	}
+
+	/** 两个截止时间中较早的一个，任一为null时返回另一个 */
+	public static Deadline min(Deadline a, Deadline b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		return a.deadlineNanos - b.deadlineNanos <= 0 ? a : b;
+	}
+
+	/** 检查是否已超过截止时间，超时抛出 TimeoutException */
+	public void check(String stage) throws TimeoutException {
+		if (isExpired()) {
+			throw new TimeoutException(String.format("%s 超过截止时间，超时时间：%d ms", stage, timeout));
+		}
+	}
+
+	/** 超时时间（毫秒） */
+	public long getTimeout() {
+		return timeout;
+	}
+}
@@ -0,0 +1,136 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Peer;
+import org.hyperledger.fabric.sdk.Peer.PeerRole;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.hyperledger.fabric.sdk.SDKUtils;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+
+import com.cnblogs.hoojo.fabric.sdk.config.DefaultConfiguration;
+import com.cnblogs.hoojo.fabric.sdk.log.ApplicationLogging;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * <b>function:</b> 背书节点选择器，按背书策略从通道的背书节点中选出满足策略的最小节点集合，
+ * 同一组织内优先选择响应快、失败少的节点，处于失败退避中的节点不参与选择
+ * @author hoojo
+ * @createDate 2018年9月14日 上午11:05:27
+ * @file EndorsementPeerSelector.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class EndorsementPeerSelector extends ApplicationLogging {
+
+	private final DefaultConfiguration config;
+	private final PeerStatistics statistics;
+	/** 已解析的背书策略，随策略对象回收 */
+	private final Cache<ChaincodeEndorsementPolicy, EndorsementPolicy> policies = CacheBuilder.newBuilder().weakKeys().build();
+
+	public EndorsementPeerSelector(DefaultConfiguration config, PeerStatistics statistics) {
+		this.config = config;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * 选择满足背书策略的节点
+	 * @param excluded 本次不参与选择的节点
+	 * @return 背书节点，策略无法解析或无法满足时返回null
+	 */
+	public Collection<Peer> select(Channel channel, ChaincodeEndorsementPolicy policy, Collection<Peer> excluded) {
+		EndorsementPolicy endorsementPolicy = getPolicy(policy);
+		if (endorsementPolicy == null) {
+			return null;
+		}
+
+		Map<String, List<Peer>> candidates = new HashMap<>();
+		for (Peer peer : channel.getPeers(EnumSet.of(PeerRole.ENDORSING_PEER))) {
+			if (excluded.contains(peer) || !statistics.isAvailable(peer.getName())) {
+				continue;
+			}
+
+			String mspId = getMSPID(peer.getName());
+			if (mspId != null) {
+				candidates.computeIfAbsent(mspId, key -> new ArrayList<>()).add(peer);
+			}
+		}
+
+		List<Peer> peers = endorsementPolicy.select(candidates, peer -> statistics.getScore(peer.getName()));
+		if (peers == null) {
+			logger.warn("通道：{} 的可用背书节点无法满足背书策略，MSP：{}", channel.getName(), endorsementPolicy.getPrincipals());
+		} else if (logger.isDebugEnabled()) {
+			logger.debug("通道：{} 选择背书节点：{}", channel.getName(), getNames(peers));
+		}
+
+		return peers;
+	}
+
+	/**
+	 * 从成功的提议响应中选出满足背书策略的一致响应集合，多个集合满足时选择响应最多的集合
+	 * @return 一致响应集合，无法满足策略时返回null
+	 */
+	public Collection<ProposalResponse> selectQuorum(ChaincodeEndorsementPolicy policy, Collection<ProposalResponse> responses) throws InvalidArgumentException {
+		EndorsementPolicy endorsementPolicy = getPolicy(policy);
+		if (endorsementPolicy == null || responses.isEmpty()) {
+			return null;
+		}
+
+		Set<ProposalResponse> quorum = null;
+		for (Set<ProposalResponse> consistencySet : SDKUtils.getProposalConsistencySets(responses)) {
+			Map<String, List<ProposalResponse>> endorsements = new HashMap<>();
+			for (ProposalResponse response : consistencySet) {
+				String mspId = getMSPID(response.getPeer().getName());
+				if (mspId != null) {
+					endorsements.computeIfAbsent(mspId, key -> new ArrayList<>()).add(response);
+				}
+			}
+
+			if (endorsementPolicy.select(endorsements, response -> 0) != null && (quorum == null || consistencySet.size() > quorum.size())) {
+				quorum = consistencySet;
+			}
+		}
+
+		return quorum;
+	}
+
+	public PeerStatistics getStatistics() {
+		return statistics;
+	}
+
+	/** 获取已解析的背书策略，解析失败返回null */
+	private EndorsementPolicy getPolicy(ChaincodeEndorsementPolicy policy) {
+		try {
+			return policies.get(policy, () -> EndorsementPolicy.parse(policy.getChaincodeEndorsementPolicyAsBytes()));
+		} catch (ExecutionException e) {
+			logger.warn("解析背书策略失败：{}", e.getCause().getMessage());
+			return null;
+		}
+	}
+
+	/** 查找节点所属的 MSP，节点和 MSP 的对应关系随配置快照建立，重新加载配置后自动更新 */
+	private String getMSPID(String peerName) {
+		return config.getPeerMSPID(peerName);
+	}
+
+	static List<String> getNames(Collection<Peer> peers) {
+		List<String> names = new ArrayList<>(peers.size());
+		for (Peer peer : peers) {
+			names.add(peer.getName());
+		}
+		return names;
+	}
+}
@@ -0,0 +1,207 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+import org.hyperledger.fabric.protos.common.MspPrincipal.MSPPrincipal;
+import org.hyperledger.fabric.protos.common.MspPrincipal.MSPRole;
+import org.hyperledger.fabric.protos.common.Policies.SignaturePolicy;
+import org.hyperledger.fabric.protos.common.Policies.SignaturePolicy.NOutOf;
+import org.hyperledger.fabric.protos.common.Policies.SignaturePolicyEnvelope;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * <b>function:</b> 解析后的背书策略，计算满足策略的最小签名组合，并按节点评分选出代价最小的背书节点集合。
+ * 每个组合是策略中身份（principal）的多重集合，同一个身份出现多次时需要不同的节点各自签名；
+ * 只支持按 MSP 角色声明的身份，其他类型的身份无法映射到节点
+ * @author hoojo
+ * @createDate 2018年9月14日 上午10:36:18
+ * @file EndorsementPolicy.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public final class EndorsementPolicy {
+
+	/** 最多保留的签名组合数量，避免复杂策略组合爆炸 */
+	private static final int MAX_COMBINATIONS = 256;
+
+	/** 策略中身份对应的 MSP，无法识别的身份为null */
+	private final List<String> principals;
+	/** 满足策略的最小签名组合，每个组合是身份下标的有序列表 */
+	private final List<List<Integer>> combinations;
+
+	private EndorsementPolicy(List<String> principals, List<List<Integer>> combinations) {
+		this.principals = Collections.unmodifiableList(principals);
+		this.combinations = Collections.unmodifiableList(combinations);
+	}
+
+	/** 解析 SignaturePolicyEnvelope 格式的背书策略 */
+	public static EndorsementPolicy parse(byte[] policyBytes) {
+		try {
+			return parse(SignaturePolicyEnvelope.parseFrom(policyBytes));
+		} catch (InvalidProtocolBufferException e) {
+			throw new IllegalArgumentException("背书策略格式错误", e);
+		}
+	}
+
+	public static EndorsementPolicy parse(SignaturePolicyEnvelope envelope) {
+		List<String> principals = new ArrayList<>(envelope.getIdentitiesCount());
+		for (MSPPrincipal identity : envelope.getIdentitiesList()) {
+			String mspId = null;
+			if (identity.getPrincipalClassification() == MSPPrincipal.Classification.ROLE) {
+				try {
+					mspId = MSPRole.parseFrom(identity.getPrincipal()).getMspIdentifier();
+				} catch (InvalidProtocolBufferException e) {
+					throw new IllegalArgumentException("背书策略身份格式错误", e);
+				}
+			}
+			principals.add(mspId);
+		}
+
+		return new EndorsementPolicy(principals, minimize(solve(envelope.getRule())));
+	}
+
+	/** 策略中身份对应的 MSP */
+	public List<String> getPrincipals() {
+		return principals;
+	}
+
+	/** 满足策略的最小签名组合 */
+	public List<List<Integer>> getCombinations() {
+		return combinations;
+	}
+
+	/**
+	 * 选出满足策略且评分总和最小的节点集合，同一组合中每个身份分配不同的节点
+	 * @param candidates MSP -> 候选节点
+	 * @param score 节点评分，越小越优先
+	 * @return 背书节点，无法满足策略时返回null
+	 */
+	public <P> List<P> select(Map<String, List<P>> candidates, ToDoubleFunction<P> score) {
+		List<P> best = null;
+		double bestCost = Double.MAX_VALUE;
+
+		for (List<Integer> combination : combinations) {
+			List<P> selected = new ArrayList<>(combination.size());
+			Set<P> used = new HashSet<>();
+			double cost = 0;
+
+			for (Integer index : combination) {
+				P peer = null;
+				double peerScore = Double.MAX_VALUE;
+				String mspId = principals.get(index);
+				if (mspId != null && candidates.containsKey(mspId)) {
+					for (P candidate : candidates.get(mspId)) {
+						double candidateScore = score.applyAsDouble(candidate);
+						if (!used.contains(candidate) && (peer == null || candidateScore < peerScore)) {
+							peer = candidate;
+							peerScore = candidateScore;
+						}
+					}
+				}
+				if (peer == null) {
+					selected = null;
+					break;
+				}
+
+				used.add(peer);
+				selected.add(peer);
+				cost += peerScore;
+			}
+
+			if (selected != null && cost < bestCost) {
+				best = selected;
+				bestCost = cost;
+			}
+		}
+
+		return best;
+	}
+
+	/** 计算满足规则的签名组合 */
+	private static List<List<Integer>> solve(SignaturePolicy rule) {
+		switch (rule.getTypeCase()) {
+		case SIGNED_BY:
+			return Collections.singletonList(Collections.singletonList(rule.getSignedBy()));
+		case N_OUT_OF:
+			NOutOf nOutOf = rule.getNOutOf();
+
+			List<List<List<Integer>>> rules = new ArrayList<>(nOutOf.getRulesCount());
+			for (SignaturePolicy item : nOutOf.getRulesList()) {
+				rules.add(solve(item));
+			}
+
+			Set<List<Integer>> result = new LinkedHashSet<>();
+			choose(rules, nOutOf.getN(), 0, new ArrayList<>(), result);
+			return minimize(new ArrayList<>(result));
+		default:
+			return Collections.emptyList();
+		}
+	}
+
+	/** 从子规则中任选 n 个，合并各自的签名组合 */
+	private static void choose(List<List<List<Integer>>> rules, int n, int start, List<Integer> current, Set<List<Integer>> result) {
+		if (result.size() >= MAX_COMBINATIONS) {
+			return;
+		}
+		if (n <= 0) {
+			List<Integer> combination = new ArrayList<>(current);
+			Collections.sort(combination);
+			result.add(combination);
+			return;
+		}
+
+		for (int i = start; i <= rules.size() - n; i++) {
+			for (List<Integer> option : rules.get(i)) {
+				current.addAll(option);
+				choose(rules, n - 1, i + 1, current, result);
+				for (int j = 0; j < option.size(); j++) {
+					current.remove(current.size() - 1);
+				}
+			}
+		}
+	}
+
+	/** 去掉包含其他组合的组合，只保留最小组合 */
+	private static List<List<Integer>> minimize(List<List<Integer>> combinations) {
+		List<List<Integer>> result = new ArrayList<>();
+		for (List<Integer> combination : combinations) {
+			boolean dominated = false;
+			for (List<Integer> other : combinations) {
+				if (other != combination && !other.equals(combination) && contains(combination, other)) {
+					dominated = true;
+					break;
+				}
+			}
+			if (!dominated && !result.contains(combination)) {
+				result.add(combination);
+			}
+		}
+		return result;
+	}
+
+	/** 有序多重集合 a 是否包含 b */
+	private static boolean contains(List<Integer> a, List<Integer> b) {
+		int i = 0;
+		for (Integer item : b) {
+			while (i < a.size() && a.get(i) < item) {
+				i++;
+			}
+			if (i >= a.size() || !a.get(i).equals(item)) {
+				return false;
+			}
+			i++;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,249 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cnblogs.hoojo.fabric.sdk.log.ApplicationLogging;
+
+/**
+ * 节点端点注册表：按节点类型、名称、URL 和连接属性登记 Peer、Orderer、EventHub 端点，登记时读取一次 TLS 证书和客户端证书、私钥文件，
+ * 以 pemBytes、clientCertBytes、clientKeyBytes 属性提供给 SDK，多个通道创建同一节点时不再重复读取 PEM 文件；
+ * 端点按通道做引用计数，通道释放后没有引用的端点进入空闲状态，空闲超时后清除。
+ * <p>
+ * 这不是连接池：Fabric SDK 的 Peer、Orderer、EventHub 对象只能属于一个通道，gRPC 连接由对象内部创建，
+ * 每个通道仍然有自己的连接，通道释放时关闭。证书文件修改后文件修改时间变化，会登记为新的端点重新读取
+ * </p>
+ * @author hoojo
+ * @createDate 2018年7月20日 上午10:08:33
+ * @file EndpointRegistry.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class EndpointRegistry extends ApplicationLogging {
+
+	/** 默认空闲端点保留时间（毫秒） */
+	public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+	
+	public enum EndpointType {
+		PEER, ORDERER, EVENT_HUB
+	}
+	
+	/** 文件属性 -> SDK 对应的字节属性 */
+	private static final Map<String, String> FILE_PROPERTIES = new LinkedHashMap<>();
+	static {
+		FILE_PROPERTIES.put("pemFile", "pemBytes");
+		FILE_PROPERTIES.put("clientCertFile", "clientCertBytes");
+		FILE_PROPERTIES.put("clientKeyFile", "clientKeyBytes");
+	}
+	
+	private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+	/** 空闲端点保留时间（毫秒） */
+	private final long idleTimeout;
+	
+	public EndpointRegistry() {
+		this(DEFAULT_IDLE_TIMEOUT);
+	}
+	
+	public EndpointRegistry(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+	
+	/**
+	 * 通道引用端点，端点不存在时用给定的连接属性登记，并读取证书、私钥文件
+	 * @author hoojo
+	 * @createDate 2018年7月20日 上午10:15:26
+	 * @param channelName 通道名称
+	 * @param type 端点类型
+	 * @param name 节点名称
+	 * @param url 节点URL
+	 * @param properties 连接属性
+	 * @return 端点
+	 * @throws IOException 证书、私钥文件读取失败
+	 */
+	public Endpoint acquire(String channelName, EndpointType type, String name, String url, Properties properties) throws IOException {
+		String key = toKey(type, name, url, properties);
+		
+		Endpoint endpoint;
+		try {
+			endpoint = endpoints.compute(key, (k, current) -> {
+				Endpoint target = current == null ? new Endpoint(type, name, url, loadFiles(properties)) : current;
+				target.channels.add(channelName);
+				target.idleSince = 0;
+				return target;
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		
+		logger.trace("通道 {} 引用端点：{}，引用数：{}", channelName, key, endpoint.getReferenceCount());
+		return endpoint;
+	}
+	
+	/**
+	 * 释放通道对所有端点的引用，没有引用的端点进入空闲状态
+	 * @author hoojo
+	 * @createDate 2018年7月20日 上午10:21:08
+	 * @param channelName 通道名称
+	 */
+	public void release(String channelName) {
+		long now = System.currentTimeMillis();
+		
+		for (String key : endpoints.keySet()) {
+			endpoints.computeIfPresent(key, (k, endpoint) -> {
+				if (endpoint.channels.remove(channelName) && endpoint.channels.isEmpty()) {
+					endpoint.idleSince = now;
+					logger.debug("端点空闲：{}", k);
+				}
+				return endpoint;
+			});
+		}
+	}
+	
+	/**
+	 * 清除空闲超时的端点
+	 * @author hoojo
+	 * @createDate 2018年7月20日 上午10:26:44
+	 * @return 清除的数量
+	 */
+	public int evictIdle() {
+		long deadline = System.currentTimeMillis() - idleTimeout;
+		int evicted = 0;
+		
+		Iterator<String> iter = endpoints.keySet().iterator();
+		while (iter.hasNext()) {
+			String key = iter.next();
+			if (endpoints.computeIfPresent(key, (k, endpoint) -> endpoint.channels.isEmpty() && endpoint.idleSince <= deadline ? null : endpoint) == null) {
+				logger.debug("清除空闲端点：{}", key);
+				evicted++;
+			}
+		}
+		
+		return evicted;
+	}
+	
+	public Collection<Endpoint> getEndpoints() {
+		return Collections.unmodifiableCollection(new ArrayList<>(endpoints.values()));
+	}
+	
+	/**
+	 * 端点key：类型、名称、URL 和排序后的连接属性，证书文件带上修改时间
+	 */
+	private static String toKey(EndpointType type, String name, String url, Properties properties) {
+		StringBuilder key = new StringBuilder().append(type).append('|').append(name).append('|').append(url);
+		
+		Map<String, String> sorted = new TreeMap<>();
+		for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+			String property = String.valueOf(entry.getKey());
+			Object value = entry.getValue();
+			
+			if (FILE_PROPERTIES.containsKey(property)) {
+				StringBuilder files = new StringBuilder();
+				for (String file : String.valueOf(value).split(",")) {
+					files.append(file.trim()).append('@').append(new File(file.trim()).lastModified()).append(',');
+				}
+				sorted.put(property, files.toString());
+			} else {
+				sorted.put(property, value instanceof Object[] ? Arrays.deepToString((Object[]) value) : String.valueOf(value));
+			}
+		}
+		key.append('|').append(sorted);
+		
+		return key.toString();
+	}
+	
+	/**
+	 * 读取连接属性中的证书、私钥文件，替换为对应的字节属性；多个证书文件用逗号分隔，内容依次拼接
+	 */
+	private static Properties loadFiles(Properties properties) {
+		Properties loaded = new Properties();
+		loaded.putAll(properties);
+		
+		for (Map.Entry<String, String> entry : FILE_PROPERTIES.entrySet()) {
+			String files = properties.getProperty(entry.getKey());
+			if (files == null || loaded.containsKey(entry.getValue())) {
+				continue;
+			}
+			
+			try (ByteArrayOutputStream bytes = new ByteArrayOutputStream()) {
+				for (String file : files.split(",")) {
+					bytes.write(Files.readAllBytes(Paths.get(file.trim())));
+					bytes.write('\n');
+				}
+				
+				loaded.remove(entry.getKey());
+				loaded.put(entry.getValue(), bytes.toByteArray());
+			} catch (IOException e) {
+				throw new UncheckedIOException("读取证书文件失败：" + files, e);
+			}
+		}
+		
+		return loaded;
+	}
+	
+	/**
+	 * 已登记的端点
+	 */
+	public static final class Endpoint {
+		
+		private final EndpointType type;
+		private final String name;
+		private final String url;
+		private final Properties properties;
+		/** 引用该端点的通道 */
+		private final Set<String> channels = ConcurrentHashMap.newKeySet();
+		/** 进入空闲状态的时间，被引用时为0 */
+		private volatile long idleSince;
+		
+		private Endpoint(EndpointType type, String name, String url, Properties properties) {
+			this.type = type;
+			this.name = name;
+			this.url = url;
+			this.properties = properties;
+		}
+		
+		public EndpointType getType() {
+			return type;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public String getUrl() {
+			return url;
+		}
+		
+		/** 连接属性副本，证书、私钥已读取为字节属性；SDK 创建节点时会修改属性 */
+		public Properties getProperties() {
+			Properties copy = new Properties();
+			copy.putAll(properties);
+			return copy;
+		}
+		
+		public int getReferenceCount() {
+			return channels.size();
+		}
+		
+		public Set<String> getChannels() {
+			return Collections.unmodifiableSet(channels);
+		}
+	}
+}
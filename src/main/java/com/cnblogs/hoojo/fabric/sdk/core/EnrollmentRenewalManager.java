@@ -0,0 +1,245 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.sdk.Enrollment;
+import org.hyperledger.fabric_ca.sdk.HFCAClient;
+
+import com.cnblogs.hoojo.fabric.sdk.config.DefaultConfiguration;
+import com.cnblogs.hoojo.fabric.sdk.log.ApplicationLogging;
+import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * 证书到期重新认证服务：按证书过期时间（notAfter）索引已认证的用户，
+ * 后台线程定期取出即将到期的用户，通过 {@link HFCAClient#reenroll(org.hyperledger.fabric.sdk.User)} 重新认证，
+ * 再把新证书原子替换到用户和存储中，交易请求不会承担重新认证的延迟。
+ * <p>
+ * Peer Admin 等通过本地私钥和证书文件构建的用户不由 CA 签发，不需要注册到该服务
+ * </p>
+ * @author hoojo
+ * @createDate 2018年7月16日 上午10:12:35
+ * @file EnrollmentRenewalManager.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class EnrollmentRenewalManager extends ApplicationLogging {
+
+	/** 重新认证失败后的重试间隔（毫秒） */
+	private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+	
+	/** 到期前多久重新认证（毫秒） */
+	private final long renewBefore;
+	/** 检查间隔（毫秒） */
+	private final long checkInterval;
+	
+	/** 按计划重新认证时间排序的索引 */
+	private final ConcurrentSkipListMap<RenewalKey, Renewal> schedule = new ConcurrentSkipListMap<>();
+	/** 用户 -> 当前的索引key */
+	private final Map<String, RenewalKey> keys = new ConcurrentHashMap<>();
+	
+	private final ScheduledExecutorService scheduler;
+	private ScheduledFuture<?> task;
+	
+	public EnrollmentRenewalManager(DefaultConfiguration config) {
+		this(TimeUnit.SECONDS.toMillis(config.getEnrollmentRenewBefore()), TimeUnit.SECONDS.toMillis(config.getEnrollmentRenewInterval()));
+	}
+	
+	public EnrollmentRenewalManager(long renewBefore, long checkInterval) {
+		this.renewBefore = renewBefore;
+		this.checkInterval = checkInterval;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("enrollment-renewal-%d").setDaemon(true).build());
+	}
+	
+	/**
+	 * 启动后台检查
+	 * @author hoojo
+	 * @createDate 2018年7月16日 上午10:20:11
+	 */
+	public synchronized void start() {
+		if (task == null) {
+			task = scheduler.scheduleWithFixedDelay(this::renewDue, 0, checkInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * 停止后台检查
+	 * @author hoojo
+	 * @createDate 2018年7月16日 上午10:21:03
+	 */
+	public synchronized void close() {
+		scheduler.shutdownNow();
+		task = null;
+	}
+	
+	/**
+	 * 注册用户，按证书过期时间安排重新认证，重复注册时更新计划
+	 * @author hoojo
+	 * @createDate 2018年7月16日 上午10:24:47
+	 * @param user 已认证的用户
+	 * @param ca 签发证书的CA客户端
+	 */
+	public void register(OrganizationUser user, HFCAClient ca) {
+		register(user, ca::reenroll);
+	}
+	
+	/**
+	 * 注册用户，通过 reenroller 重新认证
+	 * @author hoojo
+	 * @createDate 2018年7月16日 上午10:24:47
+	 */
+	void register(OrganizationUser user, Reenroller reenroller) {
+		Date notAfter = user.getEnrollmentNotAfter();
+		if (notAfter == null) {
+			logger.warn("用户 {} 没有可解析的证书，不安排重新认证", user.getName());
+			return;
+		}
+		
+		schedule(new Renewal(user, reenroller), notAfter.getTime() - renewBefore);
+		logger.debug("用户 {} 证书过期时间：{}，安排重新认证", user.getName(), notAfter);
+	}
+	
+	/**
+	 * 取消用户的重新认证
+	 * @author hoojo
+	 * @createDate 2018年7月16日 上午10:26:30
+	 */
+	public void unregister(OrganizationUser user) {
+		RenewalKey key = keys.remove(storeKey(user));
+		if (key != null) {
+			schedule.remove(key);
+		}
+	}
+	
+	/** 已安排重新认证的用户数 */
+	public int size() {
+		return schedule.size();
+	}
+	
+	/** 用户计划重新认证的时间，没有安排时返回-1 */
+	long getDueTime(OrganizationUser user) {
+		RenewalKey key = keys.get(storeKey(user));
+		return key == null ? -1 : key.dueTime;
+	}
+	
+	private void schedule(Renewal renewal, long dueTime) {
+		String storeKey = storeKey(renewal.user);
+		RenewalKey key = new RenewalKey(dueTime, storeKey);
+		
+		RenewalKey previous = keys.put(storeKey, key);
+		if (previous != null) {
+			schedule.remove(previous);
+		}
+		schedule.put(key, renewal);
+	}
+	
+	/**
+	 * 重新认证所有已到计划时间的用户
+	 * @author hoojo
+	 * @createDate 2018年7月16日 上午10:31:52
+	 */
+	void renewDue() {
+		ConcurrentNavigableMap<RenewalKey, Renewal> due = schedule.headMap(new RenewalKey(System.currentTimeMillis(), null), true);
+		
+		for (Map.Entry<RenewalKey, Renewal> entry : due.entrySet()) {
+			if (!schedule.remove(entry.getKey(), entry.getValue())) {
+				continue;
+			}
+			
+			Renewal renewal = entry.getValue();
+			keys.remove(entry.getKey().storeKey, entry.getKey());
+			
+			renew(renewal);
+		}
+	}
+	
+	private void renew(Renewal renewal) {
+		OrganizationUser user = renewal.user;
+		
+		try {
+			Enrollment enrollment = renewal.reenroller.reenroll(user);
+			logger.info("用户 {} 重新认证成功", user.getName());
+			
+			// 原子替换用户证书并持久化
+			user.setEnrollment(enrollment);
+			register(user, renewal.reenroller);
+		} catch (Exception e) {
+			logger.error("用户 {} 重新认证失败，{}ms 后重试：{}", user.getName(), RETRY_DELAY, e.getMessage());
+			
+			schedule(renewal, System.currentTimeMillis() + RETRY_DELAY);
+		}
+	}
+	
+	private static String storeKey(OrganizationUser user) {
+		return OrganizationUser.toStoreKey(user.getName(), user.getOrganization());
+	}
+	
+	/** 重新认证用户，返回新的证书 */
+	@FunctionalInterface
+	interface Reenroller {
+		Enrollment reenroll(OrganizationUser user) throws Exception;
+	}
+	
+	private static final class Renewal {
+		
+		private final OrganizationUser user;
+		private final Reenroller reenroller;
+		
+		private Renewal(OrganizationUser user, Reenroller reenroller) {
+			this.user = user;
+			this.reenroller = reenroller;
+		}
+	}
+	
+	/**
+	 * 索引key：先按计划时间排序，时间相同按用户排序
+	 */
+	static final class RenewalKey implements Comparable<RenewalKey> {
+		
+		private final long dueTime;
+		private final String storeKey;
+		
+		RenewalKey(long dueTime, String storeKey) {
+			this.dueTime = dueTime;
+			this.storeKey = storeKey;
+		}
+		
+		@Override
+		public int compareTo(RenewalKey other) {
+			int result = Long.compare(dueTime, other.dueTime);
+			if (result != 0) {
+				return result;
+			}
+			if (storeKey == null || other.storeKey == null) {
+				// 查询边界key排在同一时间的所有用户之后
+				return storeKey == null ? (other.storeKey == null ? 0 : 1) : -1;
+			}
+			return storeKey.compareTo(other.storeKey);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof RenewalKey)) {
+				return false;
+			}
+			RenewalKey other = (RenewalKey) obj;
+			return dueTime == other.dueTime && (storeKey == null ? other.storeKey == null : storeKey.equals(other.storeKey));
+		}
+		
+		@Override
+		public int hashCode() {
+			return Long.hashCode(dueTime) * 31 + (storeKey == null ? 0 : storeKey.hashCode());
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.cnblogs.hoojo.fabric.sdk.entity.QueryPage;
+import com.google.common.base.Strings;
+
+/**
+ * <b>function:</b> 分页查询迭代器，按书签逐页查询 chaincode，当前页开始遍历时在执行器上预取下一页；
+ * 同一时刻最多持有两页数据，遍历任意数量的记录内存占用不变；执行器拒绝预取时在遍历线程中直接查询下一页。
+ * 返回的书签为空、与上一页相同或本页记录少于分页大小时结束
+ * @author hoojo
+ * @createDate 2018年9月20日 上午10:05:21
+ * @file PagedQueryIterator.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class PagedQueryIterator<T> implements Iterator<T>, AutoCloseable {
+
+	/** 按书签查询一页数据，第一页的书签为空字符串 */
+	@FunctionalInterface
+	public interface PageLoader<T> {
+		QueryPage<T> load(String bookmark) throws Exception;
+	}
+
+	private final PageLoader<T> loader;
+	private final Executor executor;
+	private final int pageSize;
+
+	/** 当前页记录 */
+	private Iterator<T> records = Collections.emptyIterator();
+	/** 预取中的下一页，没有下一页时为null */
+	private CompletableFuture<QueryPage<T>> nextPage;
+	/** 上一页返回的书签 */
+	private String previousBookmark;
+	private boolean started;
+	private int pageCount;
+
+	public PagedQueryIterator(PageLoader<T> loader, Executor executor, int pageSize) {
+		this.loader = loader;
+		this.executor = executor;
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!started) {
+			started = true;
+			nextPage = load("");
+		}
+
+		while (!records.hasNext()) {
+			if (nextPage == null) {
+				return false;
+			}
+
+			QueryPage<T> page = join(nextPage);
+			pageCount++;
+
+			String bookmark = page.getBookmark();
+			boolean last = Strings.isNullOrEmpty(bookmark) || page.getRecords().size() < pageSize || bookmark.equals(previousBookmark);
+			previousBookmark = bookmark;
+
+			// 先预取下一页，再遍历当前页
+			nextPage = last ? null : load(bookmark);
+			records = page.getRecords().iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return records.next();
+	}
+
+	/** 已查询的页数 */
+	public int getPageCount() {
+		return pageCount;
+	}
+
+	/** 停止遍历，取消预取中的下一页 */
+	@Override
+	public void close() {
+		if (nextPage != null) {
+			nextPage.cancel(true);
+			nextPage = null;
+		}
+		records = Collections.emptyIterator();
+		started = true;
+	}
+
+	/** 转换为顺序流，关闭流时取消预取 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false).onClose(this::close);
+	}
+
+	private CompletableFuture<QueryPage<T>> load(String bookmark) {
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return loader.load(bookmark);
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, executor);
+		} catch (RejectedExecutionException e) {
+			// 执行器已满，不预取，在遍历线程中查询
+			CompletableFuture<QueryPage<T>> page = new CompletableFuture<>();
+			try {
+				page.complete(loader.load(bookmark));
+			} catch (Exception ex) {
+				page.completeExceptionally(ex);
+			}
+			return page;
+		}
+	}
+
+	private QueryPage<T> join(CompletableFuture<QueryPage<T>> page) {
+		try {
+			return page.join();
+		} catch (CompletionException e) {
+			nextPage = null;
+			
+			Throwable cause = e.getCause() == null ? e : e.getCause();
+			throw new RuntimeException(String.format("分页查询第 %d 页失败：%s", pageCount + 1, cause.getMessage()), cause);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <b>function:</b> Peer 节点调用统计，记录响应耗时和失败率的指数加权移动平均（EWMA），
+ * 连续失败的节点在退避时间内不参与选择，退避时间随连续失败次数翻倍增长
+ * @author hoojo
+ * @createDate 2018年9月14日 上午10:12:45
+ * @file PeerStatistics.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class PeerStatistics {
+
+	/** EWMA 平滑系数，越大越偏向最近的调用 */
+	private static final double ALPHA = 0.2;
+	/** 失败率对评分的放大系数 */
+	private static final double ERROR_PENALTY = 10;
+	/** 首次失败的退避时间（毫秒） */
+	private static final long BASE_BACKOFF = 1000;
+	/** 最大退避时间（毫秒） */
+	private static final long MAX_BACKOFF = 60000;
+	/** 计算耗时分位数保留的最近样本数量 */
+	private static final int SAMPLE_SIZE = 64;
+	/** 计算耗时分位数需要的最少样本数量 */
+	private static final int MIN_SAMPLES = 16;
+
+	private final Map<String, Statistic> statistics = new ConcurrentHashMap<>();
+
+	/** 记录节点调用成功及耗时 */
+	public void recordSuccess(String peerName, long elapsedMillis) {
+		statistic(peerName).success(elapsedMillis);
+	}
+
+	/** 记录节点调用成功，耗时未知（多个节点共用一次调用），只更新失败率和退避 */
+	public void recordSuccess(String peerName) {
+		statistic(peerName).success(-1);
+	}
+
+	/** 记录节点调用失败 */
+	public void recordFailure(String peerName) {
+		statistic(peerName).failure();
+	}
+
+	/** 响应耗时的 EWMA（毫秒），没有调用记录时为0 */
+	public double getLatency(String peerName) {
+		Statistic statistic = statistics.get(peerName);
+		return statistic == null ? 0 : statistic.latency;
+	}
+
+	/**
+	 * 最近调用耗时的分位数（毫秒），样本不足时返回 -1
+	 * @param percentile 分位，例如 0.95
+	 */
+	public long getLatencyPercentile(String peerName, double percentile) {
+		Statistic statistic = statistics.get(peerName);
+		return statistic == null ? -1 : statistic.percentile(percentile);
+	}
+
+	/** 失败率的 EWMA，范围 0~1 */
+	public double getErrorRate(String peerName) {
+		Statistic statistic = statistics.get(peerName);
+		return statistic == null ? 0 : statistic.errorRate;
+	}
+
+	/** 节点评分，越小越优先；没有调用记录的节点评分最低，会被优先尝试 */
+	public double getScore(String peerName) {
+		Statistic statistic = statistics.get(peerName);
+		if (statistic == null) {
+			return 0;
+		}
+		return (statistic.latency + 1) * (1 + ERROR_PENALTY * statistic.errorRate);
+	}
+
+	/** 节点是否可用，连续失败的节点在退避时间内不可用 */
+	public boolean isAvailable(String peerName) {
+		Statistic statistic = statistics.get(peerName);
+		return statistic == null || System.currentTimeMillis() >= statistic.retryAt;
+	}
+
+	/** 清除节点统计 */
+	public void reset(String peerName) {
+		statistics.remove(peerName);
+	}
+
+	private Statistic statistic(String peerName) {
+		return statistics.computeIfAbsent(peerName, name -> new Statistic());
+	}
+
+	private static final class Statistic {
+
+		private volatile double latency;
+		private volatile double errorRate;
+		private volatile long retryAt;
+		private int failures;
+		private boolean initialized;
+		/** 最近调用耗时的环形缓冲 */
+		private final long[] samples = new long[SAMPLE_SIZE];
+		private int sampleCount;
+		private int samplePosition;
+
+		private synchronized void success(long elapsedMillis) {
+			if (elapsedMillis >= 0) {
+				samples[samplePosition] = elapsedMillis;
+				samplePosition = (samplePosition + 1) % SAMPLE_SIZE;
+				sampleCount = Math.min(sampleCount + 1, SAMPLE_SIZE);
+				
+				latency = initialized ? ALPHA * elapsedMillis + (1 - ALPHA) * latency : elapsedMillis;
+				initialized = true;
+			}
+			errorRate = (1 - ALPHA) * errorRate;
+			failures = 0;
+			retryAt = 0;
+		}
+
+		private synchronized void failure() {
+			errorRate = ALPHA + (1 - ALPHA) * errorRate;
+			failures++;
+			retryAt = System.currentTimeMillis() + Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(failures - 1, 16));
+		}
+
+		private long percentile(double percentile) {
+			long[] sorted;
+			synchronized (this) {
+				if (sampleCount < MIN_SAMPLES) {
+					return -1;
+				}
+				sorted = Arrays.copyOf(samples, sampleCount);
+			}
+			
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+		}
+	}
+}
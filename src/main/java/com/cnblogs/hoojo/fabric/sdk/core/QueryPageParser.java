@@ -0,0 +1,22 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import com.cnblogs.hoojo.fabric.sdk.entity.QueryPage;
+import com.cnblogs.hoojo.fabric.sdk.entity.QueryResultEntity;
+
+/**
+ * <b>function:</b> 分页查询结果解析，把 chaincode 返回的一页数据解析为记录和下一页书签，
+ * 返回格式由 chaincode 决定，例如 GetStateByRangeWithPagination 的结果和 ResponseMetadata.Bookmark
+ * @author hoojo
+ * @createDate 2018年9月20日 上午9:52:37
+ * @file QueryPageParser.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface QueryPageParser<T> {
+
+	QueryPage<T> parse(QueryResultEntity result) throws Exception;
+}
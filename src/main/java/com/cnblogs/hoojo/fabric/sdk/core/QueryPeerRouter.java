@@ -0,0 +1,200 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.hyperledger.fabric.sdk.ChaincodeResponse.Status;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Peer;
+import org.hyperledger.fabric.sdk.Peer.PeerRole;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
+
+import com.cnblogs.hoojo.fabric.sdk.config.DefaultConfiguration;
+import com.cnblogs.hoojo.fabric.sdk.log.ApplicationLogging;
+
+/**
+ * <b>function:</b> 查询路由，每次查询只发送到一个节点：按节点耗时和失败率的 EWMA 选择评分最小的节点，
+ * 主节点超过自身 p95 耗时仍未返回时，向第二个节点发送对冲请求，先成功的结果生效；
+ * 节点不可用时立即转向下一个节点。
+ * 对冲和转向的请求在独立的执行器上发送，执行器拒绝任务时不再对冲或转向，主节点被拒绝时在调用方线程直接查询主节点
+ * @author hoojo
+ * @createDate 2018年9月17日 上午10:32:08
+ * @file QueryPeerRouter.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class QueryPeerRouter extends ApplicationLogging {
+
+	/** 一次查询最多发送的节点数量 */
+	private static final int MAX_ATTEMPTS = 3;
+	/** 对冲等待时间使用的耗时分位 */
+	private static final double HEDGE_PERCENTILE = 0.95;
+
+	private final DefaultConfiguration config;
+	private final PeerStatistics statistics;
+	private final Executor executor;
+
+	public QueryPeerRouter(DefaultConfiguration config, PeerStatistics statistics, Executor executor) {
+		this.config = config;
+		this.statistics = statistics;
+		this.executor = executor;
+	}
+
+	/**
+	 * 路由查询请求，每次发送都通过 requests 创建新的请求，同一个请求对象不能重复提交
+	 * @return 第一个成功的节点响应；节点正常返回的chaincode错误也直接返回，由调用方处理
+	 */
+	public ProposalResponse query(Channel channel, Callable<QueryByChaincodeRequest> requests) throws Exception {
+		return query(channel, requests, config.getProposalWaitTime());
+	}
+
+	/**
+	 * 在 timeout 毫秒内路由查询请求，包括对冲和转向其他节点的时间
+	 */
+	public ProposalResponse query(Channel channel, Callable<QueryByChaincodeRequest> requests, long timeout) throws Exception {
+		Iterator<Peer> peers = candidates(channel).iterator();
+		if (!peers.hasNext()) {
+			throw new RuntimeException(format("通道：%s 没有可查询的节点", channel.getName()));
+		}
+
+		CompletionService<ProposalResponse> service = new ExecutorCompletionService<>(executor);
+		Map<Future<ProposalResponse>, Peer> inFlight = new HashMap<>();
+
+		Peer primary = peers.next();
+		if (!submit(service, inFlight, channel, primary, requests)) {
+			// 执行器已满，不对冲也不转向，在调用方线程直接查询，等待时间由请求的 proposalWaitTime 限制
+			logger.warn("查询执行器已满，不对冲，直接查询节点：{}", primary.getName());
+			return send(channel, primary, requests.call());
+		}
+		int attempts = 1;
+
+		long hedgeDelay = getHedgeDelay(primary);
+		boolean hedged = hedgeDelay <= 0;
+		long deadline = System.currentTimeMillis() + timeout;
+
+		Throwable cause = null;
+		try {
+			while (!inFlight.isEmpty()) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					throw new TimeoutException(format("查询在 %d ms 内未完成，节点：%s", timeout, EndorsementPeerSelector.getNames(inFlight.values())));
+				}
+
+				Future<ProposalResponse> done = service.poll(hedged ? remaining : Math.min(hedgeDelay, remaining), TimeUnit.MILLISECONDS);
+				if (done == null) {
+					// 主节点超过 p95 耗时未返回，向下一个节点发送对冲请求
+					if (!hedged && peers.hasNext() && attempts < MAX_ATTEMPTS) {
+						Peer peer = peers.next();
+						if (submit(service, inFlight, channel, peer, requests)) {
+							attempts++;
+							logger.debug("节点：{} 超过 {}ms 未返回，对冲查询节点：{}", primary.getName(), hedgeDelay, peer.getName());
+						} else {
+							logger.debug("查询执行器已满，放弃对冲查询节点：{}", peer.getName());
+						}
+					}
+					hedged = true;
+					continue;
+				}
+
+				Peer peer = inFlight.remove(done);
+				try {
+					return done.get();
+				} catch (ExecutionException e) {
+					cause = e.getCause();
+					logger.warn("节点：{} 查询失败：{}", peer.getName(), cause.getMessage());
+				}
+
+				// 节点不可用，立即转向下一个节点
+				if (peers.hasNext() && attempts < MAX_ATTEMPTS) {
+					Peer next = peers.next();
+					if (submit(service, inFlight, channel, next, requests)) {
+						attempts++;
+					} else {
+						logger.warn("查询执行器已满，放弃转向节点：{}", next.getName());
+					}
+				}
+			}
+		} finally {
+			for (Future<ProposalResponse> future : inFlight.keySet()) {
+				future.cancel(true);
+			}
+		}
+
+		throw new RuntimeException(format("通道：%s 查询失败，已尝试 %d 个节点", channel.getName(), attempts), cause);
+	}
+
+	/**
+	 * 在执行器上向节点发送查询，执行器拒绝任务时返回 false
+	 */
+	private boolean submit(CompletionService<ProposalResponse> service, Map<Future<ProposalResponse>, Peer> inFlight, Channel channel, Peer peer, Callable<QueryByChaincodeRequest> requests) {
+		try {
+			inFlight.put(service.submit(() -> send(channel, peer, requests.call())), peer);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 向单个节点发送查询并记录统计。响应中没有节点返回的提议响应时是节点或网络故障，抛出异常以转向下一个节点
+	 */
+	private ProposalResponse send(Channel channel, Peer peer, QueryByChaincodeRequest request) throws Exception {
+		long start = System.nanoTime();
+		ProposalResponse response;
+		try {
+			response = channel.queryByChaincode(request, Collections.singleton(peer)).iterator().next();
+		} catch (Exception e) {
+			statistics.recordFailure(peer.getName());
+			throw e;
+		}
+
+		if (response.getStatus() != Status.SUCCESS && response.getProposalResponse() == null) {
+			statistics.recordFailure(peer.getName());
+			throw new RuntimeException(format("节点：%s 不可用：%s", peer.getName(), response.getMessage()));
+		}
+
+		statistics.recordSuccess(peer.getName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return response;
+	}
+
+	/** 候选节点：可用节点按评分排列在前，退避中的节点排在最后作为兜底 */
+	private List<Peer> candidates(Channel channel) {
+		List<Peer> peers = new ArrayList<>(channel.getPeers(EnumSet.of(PeerRole.CHAINCODE_QUERY)));
+
+		Comparator<Peer> available = Comparator.comparing(peer -> !statistics.isAvailable(peer.getName()));
+		peers.sort(available.thenComparingDouble(peer -> statistics.getScore(peer.getName())));
+		return peers;
+	}
+
+	/** 对冲等待时间：主节点最近耗时的 p95，样本不足时使用配置的等待时间 */
+	private long getHedgeDelay(Peer peer) {
+		long delay = config.getQueryHedgeDelay();
+		if (delay <= 0) {
+			return 0;
+		}
+
+		long p95 = statistics.getLatencyPercentile(peer.getName(), HEDGE_PERCENTILE);
+		return p95 > 0 ? p95 : delay;
+	}
+}
@@ -0,0 +1,263 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.BlockInfo.EnvelopeInfo;
+import org.hyperledger.fabric.sdk.BlockInfo.EnvelopeType;
+import org.hyperledger.fabric.sdk.BlockInfo.TransactionEnvelopeInfo;
+import org.hyperledger.fabric.sdk.BlockInfo.TransactionEnvelopeInfo.TransactionActionInfo;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.TxReadWriteSetInfo;
+import org.hyperledger.fabric.sdk.TxReadWriteSetInfo.NsRwsetInfo;
+import org.hyperledger.fabric.sdk.User;
+
+import com.cnblogs.hoojo.fabric.sdk.entity.QueryResultEntity;
+import com.cnblogs.hoojo.fabric.sdk.entity.TransactionEntity;
+import com.cnblogs.hoojo.fabric.sdk.log.ApplicationLogging;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * <b>function:</b> 查询结果缓存，按 通道、查询用户（名称和 MSP）、chaincode、func、args 缓存查询结果，命中时不再请求节点；
+ * chaincode 可能按调用者身份返回不同结果，不同用户的查询互不共享缓存。
+ * 在通道上注册区块监听，收到新区块后按区块中有效交易读写集涉及的 chaincode 命名空间失效缓存，
+ * 无法解析读写集（例如过滤区块）或配置为 all 模式时失效该通道的全部缓存。
+ * chaincode 之间互相调用时，被调用 chaincode 的写入不会失效调用方的缓存，这种情况需要使用 all 模式
+ * @author hoojo
+ * @createDate 2018年9月21日 上午10:16:52
+ * @file QueryResultCache.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class QueryResultCache extends ApplicationLogging {
+
+	/** 失效模式：按命名空间失效 */
+	public static final String INVALIDATION_NAMESPACE = "namespace";
+	/** 失效模式：每个区块失效通道全部缓存 */
+	public static final String INVALIDATION_ALL = "all";
+
+	/** 每个区块失效通道全部缓存 */
+	private final boolean invalidateAll;
+	private final Cache<Key, QueryResultEntity> cache;
+	/** 通道缓存代数，每次失效加一；查询期间代数发生变化的结果不写入缓存 */
+	private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+	/** 已注册区块监听的通道 */
+	private final Map<String, Channel> listening = new ConcurrentHashMap<>();
+
+	/**
+	 * @param invalidation 失效模式：{@link #INVALIDATION_NAMESPACE} 或 {@link #INVALIDATION_ALL}
+	 */
+	public QueryResultCache(long maximumSize, String invalidation) {
+		this.invalidateAll = INVALIDATION_ALL.equalsIgnoreCase(invalidation);
+		this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+	}
+
+	/**
+	 * 读取缓存，未命中时通过 loader 查询并写入缓存。带有瞬时数据的查询不缓存
+	 * @param user 执行查询的用户
+	 */
+	public QueryResultEntity get(Channel channel, User user, TransactionEntity transaction, Callable<QueryResultEntity> loader) throws Exception {
+		Map<String, byte[]> transientMap = transaction.getTransientMap();
+		if (transientMap != null && !transientMap.isEmpty()) {
+			return loader.call();
+		}
+
+		listen(channel);
+		return get(channel.getName(), user, transaction, loader);
+	}
+
+	QueryResultEntity get(String channelName, User user, TransactionEntity transaction, Callable<QueryResultEntity> loader) throws Exception {
+		Key key = new Key(channelName, user, transaction);
+		QueryResultEntity result = cache.getIfPresent(key);
+		if (result != null) {
+			logger.debug("查询命中缓存：{}", key);
+			return result;
+		}
+
+		AtomicLong generation = generation(channelName);
+		long expected = generation.get();
+
+		result = loader.call();
+		if (result != null && generation.get() == expected) {
+			cache.put(key, result);
+
+			// 写入时恰好发生失效，移除可能已过期的结果
+			if (generation.get() != expected) {
+				cache.invalidate(key);
+			}
+		}
+		return result;
+	}
+
+	/** 失效通道的全部缓存 */
+	public void invalidate(String channelName) {
+		generation(channelName).incrementAndGet();
+		cache.asMap().keySet().removeIf(key -> key.channel.equals(channelName));
+	}
+
+	/** 失效通道中指定 chaincode 的缓存 */
+	public void invalidate(String channelName, Set<String> namespaces) {
+		if (namespaces.isEmpty()) {
+			return;
+		}
+
+		generation(channelName).incrementAndGet();
+		cache.asMap().keySet().removeIf(key -> key.channel.equals(channelName) && namespaces.contains(key.namespace));
+	}
+
+	/** 失效全部缓存 */
+	public void invalidateAll() {
+		for (AtomicLong generation : generations.values()) {
+			generation.incrementAndGet();
+		}
+		cache.invalidateAll();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	/** 在通道上注册区块监听，通道重建后重新注册并失效旧数据 */
+	private void listen(Channel channel) throws Exception {
+		Channel registered = listening.get(channel.getName());
+		if (registered == channel && !channel.isShutdown()) {
+			return;
+		}
+
+		synchronized (listening) {
+			registered = listening.get(channel.getName());
+			if (registered == channel && !channel.isShutdown()) {
+				return;
+			}
+
+			String channelName = channel.getName();
+			channel.registerBlockListener(blockEvent -> onBlock(channelName, blockEvent.getBlockNumber(), getWriteNamespaces(blockEvent)));
+			listening.put(channelName, channel);
+			invalidate(channelName);
+
+			logger.info("通道：{} 注册查询缓存区块监听", channelName);
+		}
+	}
+
+	/**
+	 * 收到新区块，按读写集失效缓存
+	 * @param namespaces 区块读写集涉及的 chaincode 命名空间，为null时失效通道全部缓存
+	 */
+	void onBlock(String channelName, long blockNumber, Set<String> namespaces) {
+		if (invalidateAll || namespaces == null) {
+			invalidate(channelName);
+		} else {
+			invalidate(channelName, namespaces);
+		}
+
+		logger.debug("通道：{} 区块：{} 失效查询缓存：{}", channelName, blockNumber, invalidateAll || namespaces == null ? "all" : namespaces);
+	}
+
+	/**
+	 * 区块中有效交易读写集涉及的 chaincode 命名空间；私有数据的写入不在公开写集中，所以不按写入数量过滤
+	 * @return 命名空间，无法解析读写集时返回null
+	 */
+	private Set<String> getWriteNamespaces(BlockEvent blockEvent) {
+		if (blockEvent.isFiltered()) {
+			return null;
+		}
+
+		Set<String> namespaces = new HashSet<>();
+		try {
+			for (EnvelopeInfo envelope : blockEvent.getEnvelopeInfos()) {
+				if (envelope.getType() != EnvelopeType.TRANSACTION_ENVELOPE) {
+					// 配置区块，通道配置可能发生变化
+					return null;
+				}
+				if (!envelope.isValid()) {
+					continue;
+				}
+
+				for (TransactionActionInfo action : ((TransactionEnvelopeInfo) envelope).getTransactionActionInfos()) {
+					TxReadWriteSetInfo readWriteSet = action.getTxReadWriteSet();
+					if (readWriteSet == null) {
+						continue;
+					}
+
+					for (NsRwsetInfo nsRwset : readWriteSet.getNsRwsetInfos()) {
+						namespaces.add(nsRwset.getNamespace());
+					}
+				}
+			}
+		} catch (Exception e) {
+			logger.warn("解析区块：{} 读写集失败：{}", blockEvent.getBlockNumber(), e.getMessage());
+			return null;
+		}
+		return namespaces;
+	}
+
+	private AtomicLong generation(String channelName) {
+		return generations.computeIfAbsent(channelName, name -> new AtomicLong());
+	}
+
+	/** 缓存键：通道、用户、chaincode、func、args */
+	private static final class Key {
+
+		private final String channel;
+		private final String userName;
+		private final String mspId;
+		private final String namespace;
+		private final String version;
+		private final String func;
+		private final List<String> args;
+		private final int hash;
+
+		private Key(String channel, User user, TransactionEntity transaction) {
+			this.channel = channel;
+			this.userName = user == null ? null : user.getName();
+			this.mspId = user == null ? null : user.getMspId();
+			this.namespace = transaction.getChaincodeId().getName();
+			this.version = transaction.getChaincodeId().getVersion();
+			this.func = transaction.getFunc();
+			this.args = transaction.getArgs() == null ? Collections.emptyList() : Arrays.asList(transaction.getArgs().clone());
+			this.hash = Objects.hash(channel, userName, mspId, namespace, version, func, args);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+			return hash == other.hash && channel.equals(other.channel) && Objects.equals(userName, other.userName) && Objects.equals(mspId, other.mspId) && Objects.equals(namespace, other.namespace)
+					&& Objects.equals(version, other.version) && Objects.equals(func, other.func) && args.equals(other.args);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public String toString() {
+			return channel + "/" + mspId + ":" + userName + "/" + namespace + ":" + version + "/" + func + args;
+		}
+	}
+}
@@ -6,18 +6,41 @@ import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
+import org.hyperledger.fabric.sdk.BlockEvent.TransactionEvent;
+import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
 import org.hyperledger.fabric.sdk.ChaincodeID;
 import org.hyperledger.fabric.sdk.ChaincodeResponse.Status;
 import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Channel.DiscoveryOptions;
 import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.Peer;
 import org.hyperledger.fabric.sdk.ProposalResponse;
 import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
 import org.hyperledger.fabric.sdk.SDKUtils;
@@ -26,8 +49,13 @@ import org.hyperledger.fabric.sdk.TxReadWriteSetInfo;
 import org.hyperledger.fabric.sdk.User;
 
 import com.cnblogs.hoojo.fabric.sdk.config.DefaultConfiguration;
+import com.cnblogs.hoojo.fabric.sdk.entity.BatchResultEntity;
+import com.cnblogs.hoojo.fabric.sdk.entity.QueryResultEntity;
+import com.cnblogs.hoojo.fabric.sdk.entity.SendTransactionEntity;
 import com.cnblogs.hoojo.fabric.sdk.entity.TransactionEntity;
+import com.cnblogs.hoojo.fabric.sdk.entity.TransactionResultEntity;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 
 /**
@@ -43,8 +71,57 @@ import com.google.common.base.Strings;
  */
 public class TransactionManager extends AbstractTransactionManager {
 
+	/** 按背书策略发送提议时，最多选择背书节点的次数 */
+	private static final int MAX_ENDORSE_ATTEMPTS = 2;
+	/** 设置了调用超时时间时，背书提议阶段最多使用的剩余时间比例，其余时间留给提交Orderer 和等待交易事件 */
+	private static final double PROPOSAL_TIME_RATIO = 0.5;
+	
+	/** 背书节点选择器 */
+	private final EndorsementPeerSelector peerSelector;
+	/** 查询节点路由 */
+	private final QueryPeerRouter queryRouter;
+	/** 查询结果缓存，未开启时为null */
+	private final QueryResultCache queryCache;
+	/**
+	 * 查询路由和法定数量背书的对冲执行器，与交易执行器分开，避免对冲请求和等待对冲结果的任务争用同一组线程；
+	 * 线程全忙时拒绝任务，不在调用方线程排队执行：对冲请求直接放弃，主请求由调用方不对冲直接发送
+	 */
+	private final ThreadPoolExecutor hedgeExecutor;
+	
 	public TransactionManager(DefaultConfiguration config, HFClient client) {
-		super(config, client);
+		this(config, client, null);
+	}
+	
+	public TransactionManager(DefaultConfiguration config, HFClient client, Executor executor) {
+		super(config, client, executor);
+		
+		// 背书和查询共用节点统计
+		PeerStatistics statistics = new PeerStatistics();
+		this.peerSelector = new EndorsementPeerSelector(config, statistics);
+		this.hedgeExecutor = newHedgeExecutor(config);
+		this.queryRouter = new QueryPeerRouter(config, statistics, hedgeExecutor);
+		this.queryCache = config.getQueryCacheSize() > 0 ? new QueryResultCache(config.getQueryCacheSize(), config.getQueryCacheInvalidation()) : null;
+	}
+	
+	private ThreadPoolExecutor newHedgeExecutor(DefaultConfiguration config) {
+		int threads = config.getHedgeThreads();
+		
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), new ThreadFactoryBuilder().setNameFormat(getClass().getSimpleName() + "-hedge-%d").setDaemon(true).build(), new ThreadPoolExecutor.AbortPolicy());
+		pool.allowCoreThreadTimeOut(true);
+		
+		return pool;
+	}
+	
+	public EndorsementPeerSelector getPeerSelector() {
+		return peerSelector;
+	}
+	
+	public QueryPeerRouter getQueryRouter() {
+		return queryRouter;
+	}
+	
+	public QueryResultCache getQueryCache() {
+		return queryCache;
 	}
 	
 	/**
@@ -68,95 +145,505 @@ public class TransactionManager extends AbstractTransactionManager {
 		checkArgument(!Objects.isNull(transaction.getArgs()), "args 参数为必填项");
 		
 		try {
-            // 构建——交易提议请求，向所有对等节点发送
-            TransactionProposalRequest request = client.newTransactionProposalRequest();
-            request.setProposalWaitTime(config.getProposalWaitTime());
-            request.setChaincodeLanguage(transaction.getLanguage());
-            request.setChaincodeID(transaction.getChaincodeId());
-            request.setFcn(transaction.getFunc());
-            request.setArgs(transaction.getArgs());
-            
-            // 添加——到分类账的提案中的瞬时数据
-            Map<String, byte[]> transientMap = new HashMap<>();
-            //transientMap.put("HyperLedgerFabric", "TransactionProposalRequest:JavaSDK".getBytes(UTF_8)); //Just some extra junk in transient map
-            //transientMap.put("method", "TransactionProposalRequest".getBytes(UTF_8)); // ditto
-            //transientMap.put("result", ":)".getBytes(UTF_8));  // This should be returned see chaincode why.
-
-            if (transaction.getTransientMap() != null) {
-            	transientMap.putAll(transaction.getTransientMap());
-            }
-            request.setTransientMap(transientMap);
-            
-            if (user != null) { // 使用特定用户
-				request.setUserContext(user);
+			Collection<ProposalResponse> responses = sendTransactionProposal(user, channel, transaction, Deadline.after(transaction.getTimeout()));
+			
+			return checkTransactionProposal(transaction, responses);
+		} catch (Exception e) {
+            logger.error("调用chaincode时发生异常：", e);
+            throw new RuntimeException("调用chaincode时发生异常： " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * 异步提交交易：背书提议、一致性检查、提交Orderer 作为一条非阻塞的流水线在执行器上完成，返回交易事件的 CompletableFuture。
+	 * 背压：执行器线程全忙时交易在执行器队列中等待，队列也满时执行器拒绝交易，
+	 * 返回以 RejectedExecutionException 失败的 CompletableFuture，背书提议不会在调用方线程执行，调用方可以稍后重试
+	 * @author hoojo
+	 * @createDate 2018年7月2日 上午10:20:16
+	 */
+	public CompletableFuture<TransactionEvent> submitAsync(Channel channel, TransactionEntity transaction) {
+		return submitAsync(null, channel, transaction, null);
+	}
+	
+	/**
+	 * 异步提交交易，使用特定用户进行背书提议，并按照 SendTransactionEntity 选项提交到Orderer
+	 * @author hoojo
+	 * @createDate 2018年7月2日 上午10:20:16
+	 */
+	public CompletableFuture<TransactionEvent> submitAsync(User user, Channel channel, TransactionEntity transaction, SendTransactionEntity sendTransaction) {
+		// 调用超时时间在背书和提交两个阶段之间分配，背书阶段超时不会耗尽提交阶段的时间
+		final Deadline deadline = Deadline.after(transaction.getTimeout());
+		final Deadline proposalDeadline = deadline == null ? null : deadline.split(PROPOSAL_TIME_RATIO);
+		
+		return submitAsync(user, channel, transaction, sendTransaction, proposalDeadline, deadline);
+	}
+	
+	/**
+	 * 异步提交交易，背书阶段在 proposalDeadline 内完成，提交Orderer 阶段在 deadline 内完成，为null时不限制
+	 * @author hoojo
+	 * @createDate 2018年7月2日 上午10:20:16
+	 */
+	private CompletableFuture<TransactionEvent> submitAsync(User user, Channel channel, TransactionEntity transaction, SendTransactionEntity sendTransaction, Deadline proposalDeadline, Deadline deadline) {
+		logger.info("在通道：{}，异步提交Chaincode 交易业务: {}", channel.getName(), transaction.getChaincodeId());
+		
+		checkArgument(!Strings.isNullOrEmpty(transaction.getFunc()), "func 参数为必填项");
+		checkArgument(!Objects.isNull(transaction.getArgs()), "args 参数为必填项");
+		
+		CompletableFuture<Collection<ProposalResponse>> proposal;
+		try {
+			proposal = CompletableFuture.supplyAsync(() -> {
+				// 背书：向Peer节点发送交易提议
+				try {
+					return sendTransactionProposal(user, channel, transaction, proposalDeadline);
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, executor);
+		} catch (RejectedExecutionException e) {
+			logger.warn("交易执行器已满，拒绝异步交易：{}", transaction.getChaincodeId());
+			
+			CompletableFuture<TransactionEvent> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(e);
+			return rejected;
+		}
+		
+		return proposal.thenApply(responses -> {
+			// 一致性检查：校验提议响应结果
+			try {
+				return checkTransactionProposal(transaction, responses);
+			} catch (Exception e) {
+				throw new CompletionException(e);
 			}
-            
-            // 发送——交易请求
-            Collection<ProposalResponse> responses = null;
-            if (transaction.isSpecificPeers()) {
-            	responses = channel.sendTransactionProposal(request, channel.getPeers()); // default
-            } else {
-            	responses = channel.sendTransactionProposal(request);
-            }
-            logger.info("向 channel.Peers节点——发起交易“提议”请求，参数: {}", request);
-            
-            Collection<ProposalResponse> successResponses = new LinkedList<>();
-            Collection<ProposalResponse> failedResponses = new LinkedList<>();
-            
+		}).thenCompose(responses -> {
+			// 提交：将背书结果发送到Orderer，等待交易事件
+			try {
+				return sendTransaction(responses, sendTransaction, channel, deadline);
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+	
+	/**
+	 * 批量提交交易，按照配置的最大在途数量进行流水线提交
+	 * @author hoojo
+	 * @createDate 2018年7月3日 下午2:42:18
+	 */
+	public BatchResultEntity submitBatch(Channel channel, List<TransactionEntity> transactions) throws InterruptedException {
+		return submitBatch(null, channel, transactions, null, config.getBatchMaxInFlight());
+	}
+	
+	/**
+	 * 批量提交交易：背书和提交Orderer 以流水线方式执行，在途交易数量达到 maxInFlight 时阻塞等待（背压），
+	 * 全部交易完成后返回每笔交易的结果和整体吞吐量。
+	 * 每笔交易的流水线在单笔超时时间内结束后才释放在途数量，超时只用于报告结果，超时的交易不会让实际在途数量超过 maxInFlight
+	 * @author hoojo
+	 * @createDate 2018年7月3日 下午2:42:18
+	 */
+	public BatchResultEntity submitBatch(User user, Channel channel, List<TransactionEntity> transactions, SendTransactionEntity sendTransaction, int maxInFlight) throws InterruptedException {
+		logger.info("在通道：{}，批量提交交易数量：{}，最大在途数量：{}", channel.getName(), transactions.size(), maxInFlight);
+		
+		checkArgument(maxInFlight > 0, "maxInFlight 必须大于0");
+		
+		final Semaphore window = new Semaphore(maxInFlight);
+		final List<CompletableFuture<TransactionResultEntity>> futures = new ArrayList<>(transactions.size());
+		
+		final long start = System.nanoTime();
+		for (int i = 0; i < transactions.size(); i++) {
+			final int index = i;
+			final TransactionEntity transaction = transactions.get(i);
+			
+			// 背压：在途交易达到上限时等待
+			window.acquire();
+			
+			final long begin = System.nanoTime();
+			final long timeout = getBatchTimeout(transaction, sendTransaction);
+			
+			CompletableFuture<TransactionEvent> future = null;
+			try {
+				// 未设置调用超时时间的交易，提交阶段同样限制在单笔超时时间内，流水线总会结束并释放在途数量
+				Deadline deadline = Deadline.after(timeout);
+				Deadline proposalDeadline = transaction.getTimeout() > 0 ? deadline.split(PROPOSAL_TIME_RATIO) : null;
+				
+				CompletableFuture<TransactionEvent> work = submitAsync(user, channel, transaction, sendTransaction, proposalDeadline, deadline);
+				work.whenComplete((event, e) -> window.release());
+				
+				// 超时只完成报告结果的 Future，不影响仍在执行的流水线
+				future = withTimeout(work.thenApply(event -> event), timeout, TimeUnit.MILLISECONDS);
+			} catch (Exception e) {
+				window.release();
+				
+				future = new CompletableFuture<>();
+				future.completeExceptionally(e);
+			}
+			
+			futures.add(future.handle((event, e) -> {
+				Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+				if (cause != null) {
+					logger.warn("批量交易第 {} 笔失败：{}", index, cause.getMessage());
+				}
+				
+				return new TransactionResultEntity(index, transaction, event, cause, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+			}));
+		}
+		
+		List<TransactionResultEntity> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<TransactionResultEntity> future : futures) {
+			results.add(future.join());
+		}
+		
+		BatchResultEntity batch = new BatchResultEntity(results, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		logger.info("批量交易完成，总数：{}，成功：{}，失败：{}，耗时：{}ms，吞吐量：{} tx/s", results.size(), batch.getSuccessCount(), batch.getFailedCount(), batch.getElapsedMillis(), format("%.2f", batch.getThroughput()));
+		
+		return batch;
+	}
+	
+	/**
+	 * 批量交易单笔超时时间（毫秒）：优先使用交易设置的调用超时时间；未设置时使用提议等待时间加上提交等待时间，
+	 * 提交阶段设置了超时时间的以提交阶段的超时时间为准
+	 * @author hoojo
+	 * @createDate 2018年7月3日 下午3:05:26
+	 */
+	private long getBatchTimeout(TransactionEntity transaction, SendTransactionEntity sendTransaction) {
+		if (transaction.getTimeout() > 0) {
+			return transaction.getTimeout();
+		}
+		
+		long sendTimeout = config.getTransactionWaitTime();
+		if (sendTransaction != null && sendTransaction.getTimeout() > 0) {
+			sendTimeout = sendTransaction.getTimeout();
+		}
+		return config.getProposalWaitTime() + sendTimeout;
+	}
+	
+	/**
+	 * 构建交易提议请求，并向Peer节点发送
+	 * @author hoojo
+	 * @createDate 2018年7月2日 上午10:26:45
+	 */
+	private Collection<ProposalResponse> sendTransactionProposal(User user, Channel channel, TransactionEntity transaction, Deadline deadline) throws Exception {
+		// 构建——交易提议请求，向所有对等节点发送
+		TransactionProposalRequest request = newTransactionProposalRequest(user, transaction, deadline);
+		
+		// 发送——交易请求
+		Collection<ProposalResponse> responses = null;
+		if (transaction.isSpecificPeers()) {
+			responses = channel.sendTransactionProposal(request, channel.getPeers()); // default
+		} else if (transaction.isDiscovery()) {
+			responses = channel.sendTransactionProposalToEndorsers(request, DiscoveryOptions.createDiscoveryOptions());
+		} else if (transaction.getEndorsementPolicy() != null && transaction.isQuorum()) {
+			responses = sendTransactionProposalToQuorum(channel, request, () -> newTransactionProposalRequest(user, transaction, deadline), transaction.getEndorsementPolicy());
+		} else if (transaction.getEndorsementPolicy() != null) {
+			responses = sendTransactionProposalToEndorsers(channel, request, () -> newTransactionProposalRequest(user, transaction, deadline), transaction.getEndorsementPolicy());
+		} else {
+			responses = channel.sendTransactionProposal(request);
+		}
+		logger.info("向 channel.Peers节点——发起交易“提议”请求，参数: {}", request);
+		
+		return responses;
+	}
+	
+	/**
+	 * 构建交易提议请求，请求对象提交后不能再次发送，重新发起提议时需要重新构建
+	 * @author hoojo
+	 * @createDate 2018年7月2日 上午10:26:45
+	 */
+	private TransactionProposalRequest newTransactionProposalRequest(User user, TransactionEntity transaction, Deadline deadline) throws Exception {
+		TransactionProposalRequest request = client.newTransactionProposalRequest();
+		request.setProposalWaitTime(getProposalWaitTime(deadline));
+		request.setChaincodeLanguage(transaction.getLanguage());
+		request.setChaincodeID(transaction.getChaincodeId());
+		request.setFcn(transaction.getFunc());
+		request.setArgs(transaction.getArgs());
+		
+		// 添加——到分类账的提案中的瞬时数据，没有瞬时数据时使用共享的空Map
+		//transientMap.put("HyperLedgerFabric", "TransactionProposalRequest:JavaSDK".getBytes(UTF_8)); //Just some extra junk in transient map
+		//transientMap.put("method", "TransactionProposalRequest".getBytes(UTF_8)); // ditto
+		//transientMap.put("result", ":)".getBytes(UTF_8));  // This should be returned see chaincode why.
+		request.setTransientMap(copyTransientMap(transaction));
+		
+		if (user != null) { // 使用特定用户
+			request.setUserContext(user);
+		}
+		
+		return request;
+	}
+	
+	/**
+	 * 法定数量背书：以较短的等待时间按背书策略向最小节点集合发送提议，集合中的节点超过各自 p95 耗时仍未全部返回时，
+	 * 用新的提议（新的交易ID）向另一组不重叠的满足策略的节点发送对冲提议，先得到满足背书策略的一致响应的一组立即返回，
+	 * 另一组的提议直接放弃，慢节点不再影响交易耗时；都未满足时按背书策略以正常的等待时间重新发起提议。
+	 * 同一交易的背书必须来自同一个提议，SDK 每次发送都会生成新的交易ID，所以不能逐个节点发送后再组合响应，只能按节点集合对冲。
+	 * 对冲执行器拒绝主节点集合的提议时直接按背书策略发起提议，拒绝对冲提议时不再对冲
+	 * @author hoojo
+	 * @createDate 2018年9月18日 上午10:42:15
+	 */
+	private Collection<ProposalResponse> sendTransactionProposalToQuorum(Channel channel, TransactionProposalRequest request, Callable<TransactionProposalRequest> requests, ChaincodeEndorsementPolicy policy) throws Exception {
+		Collection<Peer> primary = peerSelector.select(channel, policy, Collections.emptySet());
+		if (primary == null) {
+			return sendTransactionProposalToEndorsers(channel, request, requests, policy);
+		}
+		
+		// 法定数量等待时间同样受调用截止时间限制
+		final long proposalWaitTime = request.getProposalWaitTime();
+		final long waitTime = Math.min(config.getQuorumWaitTime(), proposalWaitTime);
+		request.setProposalWaitTime(waitTime);
+		
+		CompletionService<Collection<ProposalResponse>> service = new ExecutorCompletionService<>(hedgeExecutor);
+		List<Future<Collection<ProposalResponse>>> inFlight = new ArrayList<>(2);
+		try {
+			inFlight.add(service.submit(() -> sendTransactionProposalToPeers(channel, request, primary)));
+		} catch (RejectedExecutionException e) {
+			logger.warn("对冲执行器已满，不使用法定数量背书，按背书策略发起提议");
+			
+			request.setProposalWaitTime(proposalWaitTime);
+			return sendTransactionProposalToEndorsers(channel, request, requests, policy);
+		}
+		
+		long hedgeDelay = getHedgeDelay(primary);
+		boolean hedged = hedgeDelay <= 0;
+		long deadline = System.currentTimeMillis() + waitTime;
+		
+		try {
+			while (!inFlight.isEmpty()) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					break;
+				}
+				
+				Future<Collection<ProposalResponse>> done = service.poll(hedged ? remaining : Math.min(hedgeDelay, remaining), TimeUnit.MILLISECONDS);
+				if (done == null) {
+					if (!hedged) {
+						hedged = true;
+						
+						// 向不包含主节点集合的另一组节点发送对冲提议
+						Collection<Peer> alternate = peerSelector.select(channel, policy, primary);
+						if (alternate != null) {
+							TransactionProposalRequest hedge = requests.call();
+							hedge.setProposalWaitTime(remaining);
+							try {
+								inFlight.add(service.submit(() -> sendTransactionProposalToPeers(channel, hedge, alternate)));
+								logger.debug("背书节点：{} 超过 {}ms 未返回，对冲背书节点：{}", EndorsementPeerSelector.getNames(primary), hedgeDelay, EndorsementPeerSelector.getNames(alternate));
+							} catch (RejectedExecutionException e) {
+								logger.debug("对冲执行器已满，放弃对冲背书节点：{}", EndorsementPeerSelector.getNames(alternate));
+							}
+						}
+					}
+					continue;
+				}
+				
+				inFlight.remove(done);
+				Collection<ProposalResponse> responses;
+				try {
+					responses = done.get();
+				} catch (ExecutionException e) {
+					logger.warn("法定数量背书提议失败：{}", e.getCause().getMessage());
+					continue;
+				}
+				
+				List<ProposalResponse> successes = new ArrayList<>(responses.size());
+				for (ProposalResponse response : responses) {
+					if (response.getStatus() == ProposalResponse.Status.SUCCESS) {
+						successes.add(response);
+					}
+				}
+				// 全部失败通常是chaincode执行错误，直接返回由调用方处理
+				if (successes.isEmpty()) {
+					return responses;
+				}
+				
+				Collection<ProposalResponse> quorum = peerSelector.selectQuorum(policy, successes);
+				if (quorum != null) {
+					logger.debug("获得满足背书策略的一致响应：{}，放弃其余 {} 组提议", quorum.size(), inFlight.size());
+					return quorum;
+				}
+			}
+		} finally {
+			for (Future<Collection<ProposalResponse>> future : inFlight) {
+				future.cancel(true);
+			}
+		}
+		
+		logger.warn("{}ms 内未获得满足背书策略的一致响应，按背书策略重新发起提议", waitTime);
+		return sendTransactionProposalToEndorsers(channel, requests.call(), requests, policy);
+	}
+	
+	/** 向指定节点发送提议并记录节点统计 */
+	private Collection<ProposalResponse> sendTransactionProposalToPeers(Channel channel, TransactionProposalRequest request, Collection<Peer> peers) throws Exception {
+		long start = System.nanoTime();
+		Collection<ProposalResponse> responses = channel.sendTransactionProposal(request, peers);
+		
+		recordStatistics(responses, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return responses;
+	}
+	
+	/**
+	 * 记录一次提议调用的节点统计。只有一个节点时调用耗时就是该节点的耗时；
+	 * 多个节点共用一次调用时调用耗时是最慢节点的耗时，不计入各节点的耗时统计，只记录成功和失败。
+	 * 全部失败通常是chaincode执行错误，不是节点问题，不记录
+	 */
+	private void recordStatistics(Collection<ProposalResponse> responses, long elapsed) {
+		boolean anySuccess = false;
+		for (ProposalResponse response : responses) {
+			if (response.getStatus() == ProposalResponse.Status.SUCCESS) {
+				anySuccess = true;
+				break;
+			}
+		}
+		if (!anySuccess) {
+			return;
+		}
+		
+		PeerStatistics statistics = peerSelector.getStatistics();
+		for (ProposalResponse response : responses) {
+			String peerName = response.getPeer().getName();
+			if (response.getStatus() != ProposalResponse.Status.SUCCESS) {
+				statistics.recordFailure(peerName);
+			} else if (responses.size() == 1) {
+				statistics.recordSuccess(peerName, elapsed);
+			} else {
+				statistics.recordSuccess(peerName);
+			}
+		}
+	}
+	
+	/** 对冲等待时间：节点集合中最慢节点的 p95 耗时，样本不足时使用配置的等待时间，小于等于0不对冲 */
+	private long getHedgeDelay(Collection<Peer> peers) {
+		long delay = config.getQueryHedgeDelay();
+		if (delay <= 0) {
+			return 0;
+		}
+		
+		long max = 1;
+		for (Peer peer : peers) {
+			long p95 = peerSelector.getStatistics().getLatencyPercentile(peer.getName(), 0.95);
+			if (p95 < 0) {
+				return delay;
+			}
+			max = Math.max(max, p95);
+		}
+		return max;
+	}
+	
+	/**
+	 * 按背书策略只向满足策略的最小节点集合发送交易提议；部分节点背书失败时，排除失败节点重新选择并重新发起提议，
+	 * 无法选出满足策略的节点时退回到向通道全部背书节点发送
+	 * @author hoojo
+	 * @createDate 2018年9月14日 下午2:18:40
+	 */
+	private Collection<ProposalResponse> sendTransactionProposalToEndorsers(Channel channel, TransactionProposalRequest request, Callable<TransactionProposalRequest> requests, ChaincodeEndorsementPolicy policy) throws Exception {
+		Set<Peer> excluded = new HashSet<>();
+		
+		for (int attempt = 0; attempt < MAX_ENDORSE_ATTEMPTS; attempt++) {
+			Collection<Peer> peers = peerSelector.select(channel, policy, excluded);
+			if (peers == null) {
+				break;
+			}
+			
+			// 提交过的请求不能再次发送，重新发起提议时重新构建
+			if (request.isSubmitted()) {
+				request = requests.call();
+			}
+			
+			Collection<ProposalResponse> responses = sendTransactionProposalToPeers(channel, request, peers);
+			
+			List<Peer> failed = new ArrayList<>();
 			for (ProposalResponse response : responses) {
-				if (response.getStatus() == ProposalResponse.Status.SUCCESS) {
+				if (response.getStatus() != ProposalResponse.Status.SUCCESS) {
+					failed.add(response.getPeer());
+				}
+			}
+			
+			// 全部节点都失败通常是chaincode执行错误，不是节点问题，直接返回由调用方处理
+			if (failed.isEmpty() || failed.size() == responses.size()) {
+				return responses;
+			}
+			excluded.addAll(failed);
+			
+			logger.warn("背书节点：{} 提议失败，重新选择背书节点", EndorsementPeerSelector.getNames(failed));
+		}
+		
+		logger.warn("无法按背书策略选择节点，向通道：{} 的全部背书节点发送提议", channel.getName());
+		return channel.sendTransactionProposal(request.isSubmitted() ? requests.call() : request);
+	}
+	
+	/**
+	 * 检查交易提议响应结果：成功/失败分类、一致性检查、chaincode 信息校验。
+	 * 全部成功时直接返回原响应集合，不复制集合；响应数据只在调试日志开启时解码
+	 * @author hoojo
+	 * @createDate 2018年7月2日 上午10:31:08
+	 */
+	private Collection<ProposalResponse> checkTransactionProposal(TransactionEntity transaction, Collection<ProposalResponse> responses) throws Exception {
+		final boolean debug = logger.isDebugEnabled();
+		
+		ProposalResponse firstSuccess = null;
+		ProposalResponse firstFailed = null;
+		int failed = 0;
+		boolean consistent = true;
+		
+		for (ProposalResponse response : responses) {
+			if (response.getStatus() == ProposalResponse.Status.SUCCESS) {
+				if (debug) {
 					logger.debug("交易成功 Txid: {} from peer {}", response.getTransactionID(), response.getPeer().getName());
-					successResponses.add(response);
-				} else {
+				}
+				
+				// 一致性检查：成功响应都已验证签名，且提议响应内容与第一个成功响应一致
+				if (firstSuccess == null) {
+					firstSuccess = response;
+					consistent = response.isVerified();
+				} else if (consistent) {
+					consistent = response.isVerified() && response.getProposalResponse().getPayload().equals(firstSuccess.getProposalResponse().getPayload());
+				}
+			} else {
+				if (debug) {
 					logger.debug("交易失败 Txid: {} from peer {}", response.getTransactionID(), response.getPeer().getName());
-					failedResponses.add(response);
 				}
+				if (firstFailed == null) {
+					firstFailed = response;
+				}
+				failed++;
 			}
-			
-			// 检查请求——响应结果有效且不为空
-			Collection<Set<ProposalResponse>> proposalConsistencySets = SDKUtils.getProposalConsistencySets(responses);
-            if (proposalConsistencySets.size() != 1) {
-                throw new RuntimeException(format("成功响应请求结果的数量等于1，实际响应数量： %d", proposalConsistencySets.size()));
-            }
-            logger.info("接收交易请求响应： {} ，Successful+verified: {}， Failed: {}", responses.size(), successResponses.size(), failedResponses.size());
-            
-            if (failedResponses.size() > 0) {
-                ProposalResponse firstResponse = failedResponses.iterator().next();
-                throw new RuntimeException("没有足够的背书节点调用: " + failedResponses.size() + "， endorser error: " + firstResponse.getMessage() + ". Was verified: " + firstResponse.isVerified());
-            }
-            
-            ProposalResponse response = successResponses.iterator().next();
-            // 对应上面构建的 transientMap->result
-            byte[] chaincodeBytes = response.getChaincodeActionResponsePayload(); // 链码返回的数据
-            String resultAsString = null;
-            if (chaincodeBytes != null) {
-                resultAsString = new String(chaincodeBytes, UTF_8);
-                System.out.println("resultAsString: " + resultAsString);
-            }
-            //checkArgument(StringUtils.equals(":)", resultAsString), "{} :和定义的账本数据不一致", resultAsString);
-            checkState(response.getChaincodeActionResponseStatus() == Status.SUCCESS.getStatus(), "{}：非正常的响应状态码", response.getChaincodeActionResponseStatus());
-            
-            TxReadWriteSetInfo readWriteSetInfo = response.getChaincodeActionResponseReadWriteSetInfo();
-            checkNotNull(readWriteSetInfo, "提议请求响应的读写集为空");
-            checkArgument(readWriteSetInfo.getNsRwsetCount() > 0, "提议请求读写集数量为空");
-            
-            ChaincodeID codeId = response.getChaincodeID();
-            checkNotNull(codeId, "提议请求响应ChaincodeID为空");
-            checkArgument(StringUtils.equals(transaction.getChaincodeId().getName(), codeId.getName()), "chaincode 名称不一致");
-            checkArgument(StringUtils.equals(transaction.getChaincodeId().getVersion(), codeId.getVersion()), "chaincode 版本不一致");
-            
-            final String path = codeId.getPath();
-            if (transaction.getChaincodeId().getPath() == null) {
-                checkArgument(StringUtils.isBlank(path), "chaincode Path不为空");
-            } else {
-            	checkArgument(StringUtils.equals(transaction.getChaincodeId().getPath(), path), "chaincode Path不一致");
-            }
-
-            return successResponses;
-		} catch (Exception e) {
-            logger.error("调用chaincode时发生异常：", e);
-            throw new RuntimeException("调用chaincode时发生异常： " + e.getMessage());
 		}
+		
+		// 检查请求——响应结果有效且不为空
+		if (firstSuccess == null || !consistent) {
+			// 只在异常时计算一致性集合，用于错误信息
+			int sets = SDKUtils.getProposalConsistencySets(responses).size();
+			throw new RuntimeException(format("成功响应请求结果的数量等于1，实际响应数量： %d", sets));
+		}
+		logger.info("接收交易请求响应： {} ，Successful+verified: {}， Failed: {}", responses.size(), responses.size() - failed, failed);
+		
+		if (failed > 0) {
+			throw new RuntimeException("没有足够的背书节点调用: " + failed + "， endorser error: " + firstFailed.getMessage() + ". Was verified: " + firstFailed.isVerified());
+		}
+		
+		ProposalResponse response = firstSuccess;
+		if (debug) {
+			// 对应上面构建的 transientMap->result，链码返回的数据
+			byte[] chaincodeBytes = response.getChaincodeActionResponsePayload();
+			logger.debug("resultAsString: {}", chaincodeBytes == null ? null : new String(chaincodeBytes, UTF_8));
+		}
+		//checkArgument(StringUtils.equals(":)", resultAsString), "{} :和定义的账本数据不一致", resultAsString);
+		checkState(response.getChaincodeActionResponseStatus() == Status.SUCCESS.getStatus(), "{}：非正常的响应状态码", response.getChaincodeActionResponseStatus());
+		
+		TxReadWriteSetInfo readWriteSetInfo = response.getChaincodeActionResponseReadWriteSetInfo();
+		checkNotNull(readWriteSetInfo, "提议请求响应的读写集为空");
+		checkArgument(readWriteSetInfo.getNsRwsetCount() > 0, "提议请求读写集数量为空");
+		
+		ChaincodeID codeId = response.getChaincodeID();
+		checkNotNull(codeId, "提议请求响应ChaincodeID为空");
+		checkArgument(StringUtils.equals(transaction.getChaincodeId().getName(), codeId.getName()), "chaincode 名称不一致");
+		checkArgument(StringUtils.equals(transaction.getChaincodeId().getVersion(), codeId.getVersion()), "chaincode 版本不一致");
+		
+		final String path = codeId.getPath();
+		if (transaction.getChaincodeId().getPath() == null) {
+			checkArgument(StringUtils.isBlank(path), "chaincode Path不为空");
+		} else {
+			checkArgument(StringUtils.equals(transaction.getChaincodeId().getPath(), path), "chaincode Path不一致");
+		}
+		
+		// 没有失败响应，全部响应都是成功响应
+		return responses;
 	}
 	
 	/**
@@ -165,46 +652,61 @@ public class TransactionManager extends AbstractTransactionManager {
 	 * @createDate 2018年6月15日 下午2:44:29
 	 */
 	public String queryChaincode(Channel channel, TransactionEntity transaction) throws Exception {
+		QueryResultEntity result = query(channel, transaction);
+		
+		return result == null ? null : result.toStringUtf8();
+	}
+	
+	/**
+	 * 执行 query 查询 chaincode 业务，返回不复制、按需解码的查询结果
+	 * @author hoojo
+	 * @createDate 2018年9月19日 上午10:32:51
+	 */
+	public QueryResultEntity query(Channel channel, TransactionEntity transaction) throws Exception {
 		logger.info("在通道：{} 发起chaincode 查询业务：{}", channel.getName(), transaction.getChaincodeId());
 		
 		checkArgument(!Strings.isNullOrEmpty(transaction.getFunc()), "func 参数为必填项");
 		checkArgument(!Objects.isNull(transaction.getArgs()), "args 参数为必填项");
 		
-		String payload = null;
+		if (queryCache != null) {
+			// 相同的查询在下一个区块到达前直接返回缓存结果
+			// 查询以客户端当前用户身份执行，缓存按用户区分
+			return queryCache.get(channel, client.getUserContext(), transaction, () -> queryPeers(channel, transaction));
+		}
+		return queryPeers(channel, transaction);
+	}
+	
+	/** 向节点发起查询，不经过缓存 */
+	private QueryResultEntity queryPeers(Channel channel, TransactionEntity transaction) throws Exception {
+		Deadline deadline = Deadline.after(transaction.getTimeout());
+		
+		QueryResultEntity result = null;
 		try {
-			// 构建查询请求
-			QueryByChaincodeRequest request = client.newQueryProposalRequest();
-			request.setProposalWaitTime(config.getProposalWaitTime());
-			request.setChaincodeLanguage(transaction.getLanguage());
-			request.setChaincodeID(transaction.getChaincodeId());
-			request.setFcn(transaction.getFunc());
-			request.setArgs(transaction.getArgs());
-			
-			Map<String, byte[]> transientMap = new HashMap<>();
-			//transientMap.put("HyperLedgerFabric", "QueryByChaincodeRequest:JavaSDK".getBytes(UTF_8));
-			//transientMap.put("method", "QueryByChaincodeRequest".getBytes(UTF_8));
-			
-			if (transaction.getTransientMap() != null) {
-				transientMap.putAll(transaction.getTransientMap());
-			}
-            request.setTransientMap(transientMap);
-            
-            // 向所有Peer节点发送查询请求
             Collection<ProposalResponse> responses = null;
-            if (transaction.isSpecificPeers()) {
-            	responses = channel.queryByChaincode(request, channel.getPeers());
+            if (!transaction.isSpecificPeers() && config.isQueryRouting()) {
+            	// 按节点耗时和失败率只向一个节点查询，超过 p95 耗时未返回时对冲到下一个节点
+            	responses = Collections.singletonList(queryRouter.query(channel, () -> newQueryProposalRequest(transaction, deadline), getProposalWaitTime(deadline)));
+            	
+            	logger.info("向 channel.Peer：{}——发起Chaincode查询请求", responses.iterator().next().getPeer().getName());
             } else {
-            	responses = channel.queryByChaincode(request);
+            	QueryByChaincodeRequest request = newQueryProposalRequest(transaction, deadline);
+            	
+            	// 向所有Peer节点发送查询请求
+            	if (transaction.isSpecificPeers()) {
+            		responses = channel.queryByChaincode(request, channel.getPeers());
+            	} else {
+            		responses = channel.queryByChaincode(request);
+            	}
+            	
+            	logger.info("向 channel.Peers——发起Chaincode查询请求：{}", request);
             }
             
-            logger.info("向 channel.Peers——发起Chaincode查询请求：{}", request);
-            
             for (ProposalResponse response : responses) {
                 if (!response.isVerified() || response.getStatus() != Status.SUCCESS) {
                     throw new RuntimeException("查询失败， peer " + response.getPeer().getName() + "， status: " + response.getStatus() + ". Messages: " + response.getMessage() + ". Was verified : " + response.isVerified());
                 } else {
-                    payload = response.getProposalResponse().getResponse().getPayload().toStringUtf8();
-                    logger.debug("查询来自对等点：{} ，返回结果：{}", response.getPeer().getName(), payload);
+                    result = new QueryResultEntity(response.getPeer().getName(), response.getProposalResponse().getResponse().getPayload());
+                    logger.debug("查询来自对等点：{} ，返回结果：{} 字节", result.getPeerName(), result.size());
                 }
             }
 		} catch (Exception e) {
@@ -212,6 +714,95 @@ public class TransactionManager extends AbstractTransactionManager {
             throw new RuntimeException("调用chaincode时发生异常： " + e.getMessage());
 		}
 
-		return payload;
+		return result;
+	}
+	
+	/**
+	 * 分页查询 chaincode，按配置的分页大小逐页查询，遍历当前页时预取下一页。
+	 * 每页调用 chaincode 时在 args 末尾追加 pageSize 和 bookmark 两个参数，第一页的 bookmark 为空字符串；分页结果不写入查询缓存
+	 * @author hoojo
+	 * @createDate 2018年9月20日 上午10:41:06
+	 */
+	public <T> PagedQueryIterator<T> queryPaged(Channel channel, TransactionEntity transaction, QueryPageParser<T> parser) {
+		return queryPaged(channel, transaction, config.getQueryPageSize(), parser);
+	}
+	
+	/**
+	 * 分页查询 chaincode，使用指定的分页大小
+	 * @author hoojo
+	 * @createDate 2018年9月20日 上午10:41:06
+	 */
+	public <T> PagedQueryIterator<T> queryPaged(Channel channel, TransactionEntity transaction, int pageSize, QueryPageParser<T> parser) {
+		logger.info("在通道：{} 发起chaincode 分页查询业务：{}，每页：{}", channel.getName(), transaction.getChaincodeId(), pageSize);
+		
+		checkArgument(!Strings.isNullOrEmpty(transaction.getFunc()), "func 参数为必填项");
+		checkArgument(!Objects.isNull(transaction.getArgs()), "args 参数为必填项");
+		checkArgument(pageSize > 0, "pageSize 必须大于0");
+		checkNotNull(parser, "parser 参数为必填项");
+		
+		return new PagedQueryIterator<>(bookmark -> parser.parse(queryPeers(channel, newPageTransaction(transaction, pageSize, bookmark))), executor, pageSize);
+	}
+	
+	/**
+	 * 分页查询 chaincode，返回按需查询的流，关闭流时取消预取
+	 * @author hoojo
+	 * @createDate 2018年9月20日 上午10:41:06
+	 */
+	public <T> Stream<T> queryStream(Channel channel, TransactionEntity transaction, QueryPageParser<T> parser) {
+		return queryPaged(channel, transaction, parser).stream();
+	}
+	
+	/** 构建一页的查询交易，在参数末尾追加分页大小和书签 */
+	private TransactionEntity newPageTransaction(TransactionEntity transaction, int pageSize, String bookmark) {
+		String[] args = Arrays.copyOf(transaction.getArgs(), transaction.getArgs().length + 2);
+		args[args.length - 2] = String.valueOf(pageSize);
+		args[args.length - 1] = bookmark;
+		
+		TransactionEntity page = new TransactionEntity(transaction.getChaincodeId(), transaction.getLanguage(), transaction.getFunc(), args);
+		page.setTransientMap(transaction.getTransientMap());
+		page.setSpecificPeers(transaction.isSpecificPeers());
+		page.setTimeout(transaction.getTimeout());
+		return page;
+	}
+	
+	/**
+	 * 构建查询请求
+	 * @author hoojo
+	 * @createDate 2018年9月17日 下午2:10:36
+	 */
+	private QueryByChaincodeRequest newQueryProposalRequest(TransactionEntity transaction, Deadline deadline) throws Exception {
+		QueryByChaincodeRequest request = client.newQueryProposalRequest();
+		request.setProposalWaitTime(getProposalWaitTime(deadline));
+		request.setChaincodeLanguage(transaction.getLanguage());
+		request.setChaincodeID(transaction.getChaincodeId());
+		request.setFcn(transaction.getFunc());
+		request.setArgs(transaction.getArgs());
+		
+		//transientMap.put("HyperLedgerFabric", "QueryByChaincodeRequest:JavaSDK".getBytes(UTF_8));
+		//transientMap.put("method", "QueryByChaincodeRequest".getBytes(UTF_8));
+		request.setTransientMap(copyTransientMap(transaction));
+		
+		return request;
+	}
+	
+	/**
+	 * 提议等待时间：不超过全局配置的等待时间，设置了截止时间时不超过剩余时间，已超时直接失败
+	 */
+	private long getProposalWaitTime(Deadline deadline) throws TimeoutException {
+		if (deadline == null) {
+			return config.getProposalWaitTime();
+		}
+		
+		deadline.check("背书提议");
+		return deadline.cap(config.getProposalWaitTime());
+	}
+	
+	/** 复制交易的瞬时数据，没有瞬时数据时返回共享的空Map，不额外分配 */
+	private Map<String, byte[]> copyTransientMap(TransactionEntity transaction) {
+		Map<String, byte[]> transientMap = transaction.getTransientMap();
+		if (transientMap == null || transientMap.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		return new HashMap<>(transientMap);
 	}
 }
@@ -10,7 +10,18 @@ import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.nio.file.Paths;
 import java.security.PrivateKey;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
@@ -24,11 +35,14 @@ import org.hyperledger.fabric_ca.sdk.exception.EnrollmentException;
 import org.hyperledger.fabric_ca.sdk.exception.InvalidArgumentException;
 
 import com.cnblogs.hoojo.fabric.sdk.config.DefaultConfiguration;
+import com.cnblogs.hoojo.fabric.sdk.entity.UserProvisionResultEntity;
 import com.cnblogs.hoojo.fabric.sdk.log.ApplicationLogging;
 import com.cnblogs.hoojo.fabric.sdk.model.Organization;
 import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
-import com.cnblogs.hoojo.fabric.sdk.persistence.KeyValueFileStore;
+import com.cnblogs.hoojo.fabric.sdk.persistence.CredentialCache;
+import com.cnblogs.hoojo.fabric.sdk.persistence.KeyValueStore;
 import com.cnblogs.hoojo.fabric.sdk.util.GzipUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * User 管理服务
@@ -43,15 +57,36 @@ import com.cnblogs.hoojo.fabric.sdk.util.GzipUtils;
  */
 public class UserManager extends ApplicationLogging {
 
-	private KeyValueFileStore store;
+	private KeyValueStore store;
 	private DefaultConfiguration config;
 	private Collection<Organization> organizations;
+	/** 私钥、证书解析缓存，与键值存储共用 */
+	private CredentialCache credentials = CredentialCache.getDefault();
+	/** 组织注册认证执行器 */
+	private Executor executor;
+	/** 证书到期重新认证 */
+	private EnrollmentRenewalManager renewalManager;
+
+	public UserManager(DefaultConfiguration config, KeyValueStore store) {
+		this(config, store, null);
+	}
 
-	public UserManager(DefaultConfiguration config, KeyValueFileStore store) {
+	public UserManager(DefaultConfiguration config, KeyValueStore store, Executor executor) {
 		this.config = config;
 		this.store = store;
 
 		organizations = config.getOrganizations();
+
+		if (executor == null) {
+			// 并发访问 CA 的线程数受限，避免组织较多时压垮 CA
+			int concurrency = Math.max(1, config.getEnrollConcurrency());
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat(getClass().getSimpleName() + "-%d").setDaemon(true).build());
+			pool.allowCoreThreadTimeOut(true);
+
+			executor = pool;
+		}
+		this.executor = executor;
+		this.renewalManager = new EnrollmentRenewalManager(config);
 	}
 
 	public void initialize(String adminName, String adminSecret, String userName) throws Exception {
@@ -59,6 +94,9 @@ public class UserManager extends ApplicationLogging {
 
 		initializeCaClient();
 		enrollOrganizationUsers(adminName, adminSecret, userName);
+		
+		// 后台检查证书到期，提前重新认证
+		renewalManager.start();
 	}
 
 	/**
@@ -88,7 +126,8 @@ public class UserManager extends ApplicationLogging {
 	}
 
 	/**
-	 * CA Admin、User、Peer Admin、TLS 注册和认证
+	 * CA Admin、User、Peer Admin、TLS 注册和认证，各组织在执行器上并发进行，
+	 * 单个组织失败不影响其他组织，全部完成后汇总失败的组织抛出异常
 	 * @author hoojo
 	 * @createDate 2018年6月13日 上午11:01:15
 	 * @throws Exception
@@ -96,46 +135,105 @@ public class UserManager extends ApplicationLogging {
 	private void enrollOrganizationUsers(String adminName, String adminSecret, String userName) throws Exception {
 		logger.info("Start -> Enroll Organization: CA Admin、User、Peer Admin、TLS ");
 
+		Map<Organization, CompletableFuture<Void>> futures = new LinkedHashMap<>();
 		for (Organization org : organizations) {
-			logger.info("orgName: {} / mspID: {} 进行用户注册和认证", org.getName(), org.getMSPID());
+			futures.put(org, enrollOrganization(org, adminName, adminSecret, userName));
+		}
 
-			HFCAClient ca = org.getCAClient();
-			// PKI密钥创建/签署/验证
-			ca.setCryptoSuite(CryptoSuite.Factory.getCryptoSuite());
+		List<String> failedOrgs = new ArrayList<>();
+		List<Throwable> causes = new ArrayList<>();
+		for (Map.Entry<Organization, CompletableFuture<Void>> entry : futures.entrySet()) {
+			try {
+				entry.getValue().join();
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause() == null ? e : e.getCause();
+				logger.error("组织 {} 用户注册和认证失败：{}", entry.getKey().getName(), cause.getMessage());
+
+				failedOrgs.add(entry.getKey().getName());
+				causes.add(cause);
+			}
+		}
 
-			/** TLS 证书模式：如何从Fabric CA获取客户端TLS证书，为orderer、peer 使用一个客户端TLS证书 */
-			if (config.isRunningFabricTLS()) {
-				enrollAdminTLS(org, adminName, adminSecret);
-			} else {
-				logger.debug("TLS 证书模式：{}", config.isRunningFabricTLS());
+		if (!causes.isEmpty()) {
+			RuntimeException failure = new RuntimeException(format("组织用户注册和认证失败：%s", failedOrgs), causes.get(0));
+			for (Throwable cause : causes.subList(1, causes.size())) {
+				failure.addSuppressed(cause);
 			}
+			throw failure;
+		}
+	}
 
-			HFCAInfo info = ca.info();
-			logger.debug("ca info: {}", info);
+	/**
+	 * 单个组织的注册和认证。TLS 认证、ca.info 检查、Peer Admin 构建互不依赖，与 Admin 认证并发执行；
+	 * 普通用户注册依赖 Admin 权限，在 Admin 认证完成后执行
+	 * @author hoojo
+	 * @createDate 2018年7月12日 上午10:06:25
+	 */
+	private CompletableFuture<Void> enrollOrganization(Organization org, String adminName, String adminSecret, String userName) {
+		logger.info("orgName: {} / mspID: {} 进行用户注册和认证", org.getName(), org.getMSPID());
 
-			checkNotNull(info, "HFCAInfo is null");
-			if (!StringUtils.isBlank(info.getCAName())) {
-				checkArgument(StringUtils.equals(info.getCAName(), ca.getCAName()), "HFCAInfo.CAName 和  CaInfo.CAName 不等");
-			}
+		HFCAClient ca = org.getCAClient();
+		// PKI密钥创建/签署/验证
+		try {
+			ca.setCryptoSuite(CryptoSuite.Factory.getCryptoSuite());
+		} catch (Exception e) {
+			CompletableFuture<Void> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
 
-			// admin enroll
-			OrganizationUser admin = enrollAdmin(org, adminName, adminSecret);
+		/** TLS 证书模式：如何从Fabric CA获取客户端TLS证书，为orderer、peer 使用一个客户端TLS证书 */
+		CompletableFuture<?> tls;
+		if (config.isRunningFabricTLS()) {
+			tls = async(() -> enrollAdminTLS(org, adminName, adminSecret));
+		} else {
+			logger.debug("TLS 证书模式：{}", config.isRunningFabricTLS());
+			tls = CompletableFuture.completedFuture(null);
+		}
+
+		CompletableFuture<HFCAInfo> info = async(() -> {
+			HFCAInfo caInfo = ca.info();
+			logger.debug("ca info: {}", caInfo);
+
+			checkNotNull(caInfo, "HFCAInfo is null");
+			if (!StringUtils.isBlank(caInfo.getCAName())) {
+				checkArgument(StringUtils.equals(caInfo.getCAName(), ca.getCAName()), "HFCAInfo.CAName 和  CaInfo.CAName 不等");
+			}
+			return caInfo;
+		});
 
+		// admin enroll -> user register/enroll
+		CompletableFuture<OrganizationUser> users = async(() -> enrollAdmin(org, adminName, adminSecret)).thenCompose(admin -> {
 			// 设置当前组织 admin
 			org.setAdmin(admin);
+			renewalManager.register(admin, ca);
 
-			// user register/enroll
-			OrganizationUser user = registerAndEnrollUser(org, userName);
-
+			return async(() -> registerAndEnrollUser(org, userName));
+		}).thenApply(user -> {
 			// 设置当前组织 user
 			org.addUser(user);
+			renewalManager.register(user, ca);
+			return user;
+		});
 
-			// peer admin
-			OrganizationUser peerAdmin = wrapperPeerAdmin(org);
-
+		// peer admin
+		CompletableFuture<OrganizationUser> peerAdmin = async(() -> wrapperPeerAdmin(org)).thenApply(user -> {
 			// 设置当前组织 peerAdmin
-			org.setPeerAdmin(peerAdmin);
-		}
+			org.setPeerAdmin(user);
+			return user;
+		});
+
+		return CompletableFuture.allOf(tls, info, users, peerAdmin);
+	}
+
+	private <T> CompletableFuture<T> async(Callable<T> task) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return task.call();
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
 	}
 
 	/**
@@ -183,7 +281,7 @@ public class UserManager extends ApplicationLogging {
 
 		// 从缓存或store中获取用户
 		OrganizationUser admin = store.getMember(adminName, org.getName());
-		if (!admin.isEnrolled()) { // 未认证，只需用用ca client进行认证
+		if (!admin.isEnrolled() || admin.isExpired()) { // 未认证或证书已过期，只需用用ca client进行认证
 
 			// 认证：获取用户的签名证书和私钥。
 			Enrollment enrollment = ca.enroll(admin.getName(), adminSecret);
@@ -205,6 +303,70 @@ public class UserManager extends ApplicationLogging {
 	public OrganizationUser registerAndEnrollUser(Organization org, String userName) throws Exception {
 		logger.info("普通用户——注册和认证……");
 
+		OrganizationUser user = registerUser(org, userName);
+		return enrollUser(org, user);
+	}
+
+	/**
+	 * User 角色-批量注册和认证普通用户。注册和认证请求在执行器上并发发送，一个用户认证时其他用户可以同时注册，
+	 * 并发数量受执行器线程数限制；全部完成后统一落盘一次
+	 * @author hoojo
+	 * @createDate 2018年7月13日 上午9:52:06
+	 * @param org 组织，管理员需已认证
+	 * @param userNames 用户名
+	 * @return 每个用户的结果，按用户名顺序排列
+	 */
+	public List<UserProvisionResultEntity> registerAndEnrollUsers(Organization org, Collection<String> userNames) {
+		checkNotNull(org.getAdmin(), "组织 %s 管理员未认证", org.getName());
+		logger.info("批量注册和认证普通用户：{}，数量：{}", org.getName(), userNames.size());
+
+		long start = System.currentTimeMillis();
+
+		List<CompletableFuture<UserProvisionResultEntity>> futures = new ArrayList<>(userNames.size());
+		for (String userName : userNames) {
+			long begin = System.currentTimeMillis();
+
+			CompletableFuture<UserProvisionResultEntity> future = async(() -> registerUser(org, userName))
+					.thenCompose(user -> async(() -> enrollUser(org, user)))
+					.handle((user, e) -> {
+						Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+						if (cause != null) {
+							logger.warn("用户 {} 注册和认证失败：{}", userName, cause.getMessage());
+						}
+
+						return new UserProvisionResultEntity(userName, user, cause, System.currentTimeMillis() - begin);
+					});
+			futures.add(future);
+		}
+
+		List<UserProvisionResultEntity> results = new ArrayList<>(futures.size());
+		int failed = 0;
+		for (CompletableFuture<UserProvisionResultEntity> future : futures) {
+			UserProvisionResultEntity result = future.join();
+			results.add(result);
+
+			if (result.isSuccess()) {
+				org.addUser(result.getUser());
+				renewalManager.register(result.getUser(), org.getCAClient());
+			} else {
+				failed++;
+			}
+		}
+
+		// 用户属性变更时已逐个写入存储内存，由存储合并为延迟落盘（写入延迟小于等于0的存储每次写入都会落盘）；
+		// 这里立即落盘未写入的变更，不等待写入延迟，批量结果返回时用户状态已写入文件
+		store.flush();
+
+		logger.info("批量注册和认证普通用户完成：{}，成功：{}，失败：{}，耗时：{}ms", org.getName(), results.size() - failed, failed, System.currentTimeMillis() - start);
+		return results;
+	}
+
+	/**
+	 * 利用管理员权限注册用户，已注册过的用户直接返回
+	 * @author hoojo
+	 * @createDate 2018年7月13日 上午9:45:31
+	 */
+	private OrganizationUser registerUser(Organization org, String userName) throws Exception {
 		HFCAClient ca = org.getCAClient();
 
 		// 从缓存或store中获取用户
@@ -221,7 +383,18 @@ public class UserManager extends ApplicationLogging {
 			user.setEnrollmentSecret(secret);
 		}
 
-		if (!user.isEnrolled()) { // 未认证
+		return user;
+	}
+
+	/**
+	 * 用户认证，已认证过的用户直接返回
+	 * @author hoojo
+	 * @createDate 2018年7月13日 上午9:47:12
+	 */
+	private OrganizationUser enrollUser(Organization org, OrganizationUser user) throws Exception {
+		HFCAClient ca = org.getCAClient();
+
+		if (!user.isEnrolled() || user.isExpired()) { // 未认证或证书已过期
 			// 用户认证
 			Enrollment enrollment = ca.enroll(user.getName(), user.getEnrollmentSecret());
 			logger.trace("用户：{} 进行认证: {}", user.getName(), enrollment);
@@ -259,10 +432,22 @@ public class UserManager extends ApplicationLogging {
 		// 从缓存或store中获取用户
 		OrganizationUser peerAdmin = store.getMember(orgName + "Admin", orgName, mspid, privateKeyFile, certificateFile);
 		logger.trace("构建Peer Admin用户：{}", peerAdmin);
+		
+		// 私钥或证书文件内容变化时，解析缓存返回新的证书登记，更新到用户
+		Enrollment enrollment = credentials.getEnrollment(privateKeyFile, certificateFile);
+		Enrollment current = peerAdmin.getEnrollment();
+		if (current != enrollment && (current == null || !StringUtils.equals(current.getCert(), enrollment.getCert()) || !enrollment.getKey().equals(current.getKey()))) {
+			logger.debug("Peer Admin 私钥或证书已变化，更新用户：{}", peerAdmin.getName());
+			peerAdmin.setEnrollment(enrollment);
+		}
 
 		return peerAdmin;
 	}
 
+	public EnrollmentRenewalManager getRenewalManager() {
+		return renewalManager;
+	}
+
 	public String getPEMString(PrivateKey privateKey) throws IOException {
 		StringWriter stringWriter = new StringWriter();
 
@@ -0,0 +1,65 @@
+package com.cnblogs.hoojo.fabric.sdk.entity;
+
+import java.util.List;
+
+import com.cnblogs.hoojo.fabric.sdk.common.AbstractFabricObject;
+
+/**
+ * 批量交易执行结果，包含每笔交易的结果和整体吞吐量
+ * @author hoojo
+ * @createDate 2018年7月3日 下午2:21:40
+ * @file BatchResultEntity.java
+ * @package com.cnblogs.hoojo.fabric.sdk.entity
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class BatchResultEntity extends AbstractFabricObject {
+
+	/** 每笔交易结果，按提交顺序排列 */
+	private List<TransactionResultEntity> results;
+	/** 批量交易总耗时（毫秒） */
+	private long elapsedMillis;
+	private int successCount;
+	private int failedCount;
+	
+	public BatchResultEntity(List<TransactionResultEntity> results, long elapsedMillis) {
+		super();
+		this.results = results;
+		this.elapsedMillis = elapsedMillis;
+		
+		for (TransactionResultEntity result : results) {
+			if (result.isSuccess()) {
+				successCount++;
+			} else {
+				failedCount++;
+			}
+		}
+	}
+
+	/** 吞吐量：每秒完成的交易数 */
+	public double getThroughput() {
+		if (elapsedMillis <= 0) {
+			return results.size();
+		}
+		
+		return results.size() * 1000D / elapsedMillis;
+	}
+
+	public List<TransactionResultEntity> getResults() {
+		return results;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public int getSuccessCount() {
+		return successCount;
+	}
+
+	public int getFailedCount() {
+		return failedCount;
+	}
+}
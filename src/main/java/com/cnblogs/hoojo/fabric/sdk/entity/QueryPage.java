@@ -0,0 +1,39 @@
+package com.cnblogs.hoojo.fabric.sdk.entity;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.cnblogs.hoojo.fabric.sdk.common.AbstractFabricObject;
+
+/**
+ * 分页查询的一页结果，bookmark 为 chaincode 返回的下一页书签，为空表示没有下一页
+ * @author hoojo
+ * @createDate 2018年9月20日 上午9:46:12
+ * @file QueryPage.java
+ * @package com.cnblogs.hoojo.fabric.sdk.entity
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class QueryPage<T> extends AbstractFabricObject {
+
+	/** 本页记录 */
+	private List<T> records;
+	/** 下一页书签 */
+	private String bookmark;
+
+	public QueryPage(List<T> records, String bookmark) {
+		super();
+		this.records = records == null ? Collections.emptyList() : records;
+		this.bookmark = bookmark;
+	}
+
+	public List<T> getRecords() {
+		return records;
+	}
+
+	public String getBookmark() {
+		return bookmark;
+	}
+}
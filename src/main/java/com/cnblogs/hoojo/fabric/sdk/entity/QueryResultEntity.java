@@ -0,0 +1,73 @@
+package com.cnblogs.hoojo.fabric.sdk.entity;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import com.cnblogs.hoojo.fabric.sdk.common.AbstractFabricObject;
+import com.google.protobuf.ByteString;
+
+/**
+ * chaincode 查询结果，直接持有响应中的 ByteString，不复制数据；
+ * 需要字符串时才解码，解码结果缓存，大结果可以通过只读 ByteBuffer 或输入流直接转发
+ * @author hoojo
+ * @createDate 2018年9月19日 上午10:05:48
+ * @file QueryResultEntity.java
+ * @package com.cnblogs.hoojo.fabric.sdk.entity
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class QueryResultEntity extends AbstractFabricObject {
+
+	/** 返回结果的节点 */
+	private String peerName;
+	/** 查询结果数据 */
+	private ByteString payload;
+	/** 解码后的字符串，首次使用时解码 */
+	private transient volatile String text;
+
+	public QueryResultEntity(String peerName, ByteString payload) {
+		super();
+		this.peerName = peerName;
+		this.payload = payload == null ? ByteString.EMPTY : payload;
+	}
+
+	public String getPeerName() {
+		return peerName;
+	}
+
+	/** 查询结果数据，不复制 */
+	public ByteString getPayload() {
+		return payload;
+	}
+
+	/** 查询结果的只读视图，不复制 */
+	public ByteBuffer asReadOnlyByteBuffer() {
+		return payload.asReadOnlyByteBuffer();
+	}
+
+	/** 查询结果的输入流，不复制 */
+	public InputStream newInput() {
+		return payload.newInput();
+	}
+
+	/** 查询结果字节数 */
+	public int size() {
+		return payload.size();
+	}
+
+	public boolean isEmpty() {
+		return payload.isEmpty();
+	}
+
+	/** 查询结果的 UTF-8 字符串，首次调用时解码 */
+	public String toStringUtf8() {
+		String value = text;
+		if (value == null) {
+			value = payload.toStringUtf8();
+			text = value;
+		}
+		return value;
+	}
+}
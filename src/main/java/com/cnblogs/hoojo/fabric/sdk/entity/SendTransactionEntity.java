@@ -25,6 +25,8 @@ public class SendTransactionEntity extends AbstractFabricObject {
 	private Collection<Orderer> orderers;
 	private TransactionOptions options;
 	private User user;
+	/** 提交Orderer 并等待交易事件的超时时间（毫秒），小于等于0使用全局配置 */
+	private long timeout;
 	
 	public TransactionOptions getOptions() {
 		return options;
@@ -44,4 +46,10 @@ public class SendTransactionEntity extends AbstractFabricObject {
 	public void setOrderers(Collection<Orderer> orderers) {
 		this.orderers = orderers;
 	}
+	public long getTimeout() {
+		return timeout;
+	}
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
 }
@@ -2,6 +2,7 @@ package com.cnblogs.hoojo.fabric.sdk.entity;
 
 import java.util.Map;
 
+import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
 import org.hyperledger.fabric.sdk.ChaincodeID;
 import org.hyperledger.fabric.sdk.TransactionRequest.Type;
 
@@ -26,6 +27,14 @@ public class TransactionEntity extends ChaincodeEntity {
 	private String[] args;
 	/** 在特定的Peer节点上执行chaincode */
 	private boolean specificPeers;
+	/** 背书策略，设置后只向满足策略的最小节点集合发送交易提议 */
+	private ChaincodeEndorsementPolicy endorsementPolicy;
+	/** 通过服务发现选择背书节点 */
+	private boolean discovery;
+	/** 法定数量背书，需要设置背书策略：在较短的等待时间内收到满足策略的一致响应即返回，忽略未响应的节点 */
+	private boolean quorum;
+	/** 调用超时时间（毫秒），从发起调用开始计算，覆盖背书提议、提交Orderer、等待交易事件全部阶段；小于等于0使用全局配置 */
+	private long timeout;
 	
 	public TransactionEntity(ChaincodeID chaincodeId, Type language) {
 		super(chaincodeId, language);
@@ -67,4 +76,36 @@ public class TransactionEntity extends ChaincodeEntity {
 	public void setSpecificPeers(boolean specificPeers) {
 		this.specificPeers = specificPeers;
 	}
+
+	public ChaincodeEndorsementPolicy getEndorsementPolicy() {
+		return endorsementPolicy;
+	}
+
+	public void setEndorsementPolicy(ChaincodeEndorsementPolicy endorsementPolicy) {
+		this.endorsementPolicy = endorsementPolicy;
+	}
+
+	public boolean isDiscovery() {
+		return discovery;
+	}
+
+	public void setDiscovery(boolean discovery) {
+		this.discovery = discovery;
+	}
+
+	public boolean isQuorum() {
+		return quorum;
+	}
+
+	public void setQuorum(boolean quorum) {
+		this.quorum = quorum;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
 }
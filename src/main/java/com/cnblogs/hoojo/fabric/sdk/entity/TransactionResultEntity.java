@@ -0,0 +1,64 @@
+package com.cnblogs.hoojo.fabric.sdk.entity;
+
+import org.hyperledger.fabric.sdk.BlockEvent.TransactionEvent;
+
+import com.cnblogs.hoojo.fabric.sdk.common.AbstractFabricObject;
+
+/**
+ * 批量交易中单笔交易的执行结果
+ * @author hoojo
+ * @createDate 2018年7月3日 下午2:15:22
+ * @file TransactionResultEntity.java
+ * @package com.cnblogs.hoojo.fabric.sdk.entity
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class TransactionResultEntity extends AbstractFabricObject {
+
+	/** 在批量交易中的位置 */
+	private int index;
+	/** 交易请求 */
+	private TransactionEntity transaction;
+	/** 交易事件，失败时为空 */
+	private TransactionEvent transactionEvent;
+	/** 交易异常，成功时为空 */
+	private Throwable exception;
+	/** 交易耗时（毫秒） */
+	private long elapsedMillis;
+	
+	public TransactionResultEntity(int index, TransactionEntity transaction, TransactionEvent transactionEvent, Throwable exception, long elapsedMillis) {
+		super();
+		this.index = index;
+		this.transaction = transaction;
+		this.transactionEvent = transactionEvent;
+		this.exception = exception;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/** 交易是否成功 */
+	public boolean isSuccess() {
+		return exception == null && transactionEvent != null && transactionEvent.isValid();
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public TransactionEntity getTransaction() {
+		return transaction;
+	}
+
+	public TransactionEvent getTransactionEvent() {
+		return transactionEvent;
+	}
+
+	public Throwable getException() {
+		return exception;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+}
@@ -0,0 +1,56 @@
+package com.cnblogs.hoojo.fabric.sdk.entity;
+
+import com.cnblogs.hoojo.fabric.sdk.common.AbstractFabricObject;
+import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
+
+/**
+ * 批量用户注册和认证中单个用户的结果
+ * @author hoojo
+ * @createDate 2018年7月13日 上午9:40:18
+ * @file UserProvisionResultEntity.java
+ * @package com.cnblogs.hoojo.fabric.sdk.entity
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class UserProvisionResultEntity extends AbstractFabricObject {
+
+	/** 用户名 */
+	private String userName;
+	/** 注册认证后的用户，失败时为空 */
+	private OrganizationUser user;
+	/** 注册或认证异常，成功时为空 */
+	private Throwable exception;
+	/** 注册和认证耗时（毫秒） */
+	private long elapsedMillis;
+	
+	public UserProvisionResultEntity(String userName, OrganizationUser user, Throwable exception, long elapsedMillis) {
+		super();
+		this.userName = userName;
+		this.user = user;
+		this.exception = exception;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/** 注册和认证是否成功 */
+	public boolean isSuccess() {
+		return exception == null && user != null && user.isEnrolled();
+	}
+
+	public String getUserName() {
+		return userName;
+	}
+
+	public OrganizationUser getUser() {
+		return user;
+	}
+
+	public Throwable getException() {
+		return exception;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+}
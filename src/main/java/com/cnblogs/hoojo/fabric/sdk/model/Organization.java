@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 
@@ -181,4 +182,21 @@ public class Organization extends AbstractFabricObject {
     public void setCAName(String caName) {
         this.caName = caName;
     }
+
+    /**
+     * 配置重新加载后沿用旧组织的管理员、用户和 CA 客户端；
+     * MSP 变化时不沿用任何状态，CA 地址、名称或配置变化时需要重新创建 CA 客户端
+     */
+    public void inheritRuntimeState(Organization previous) {
+        if (previous == null || !Objects.equals(mspid, previous.mspid)) {
+            return;
+        }
+
+        if (Objects.equals(caLocation, previous.caLocation) && Objects.equals(caName, previous.caName) && Objects.equals(caProperties, previous.caProperties)) {
+            this.caClient = previous.caClient;
+        }
+        this.admin = previous.admin;
+        this.peerAdmin = previous.peerAdmin;
+        this.userMap.putAll(previous.userMap);
+    }
 }
@@ -1,22 +1,21 @@
 package com.cnblogs.hoojo.fabric.sdk.model;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Date;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
-import org.bouncycastle.util.encoders.Hex;
 import org.hyperledger.fabric.sdk.Enrollment;
 import org.hyperledger.fabric.sdk.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cnblogs.hoojo.fabric.sdk.common.AbstractFabricObject;
-import com.cnblogs.hoojo.fabric.sdk.persistence.KeyValueFileStore;
+import com.cnblogs.hoojo.fabric.sdk.persistence.CredentialCache;
+import com.cnblogs.hoojo.fabric.sdk.persistence.KeyValueStore;
+import com.cnblogs.hoojo.fabric.sdk.persistence.UserStateCodec;
+import com.cnblogs.hoojo.fabric.sdk.persistence.UserStateCodec.UserState;
 
 import io.netty.util.internal.StringUtil;
 
@@ -40,9 +39,9 @@ public class OrganizationUser extends AbstractFabricObject implements User, Seri
 	/** 注册证书认证秘钥 */
 	private String enrollmentSecret;
 	/** 注册证书信息  */
-	private Enrollment enrollment = null; // need access in test env.
+	private volatile Enrollment enrollment = null; // need access in test env. 重新认证时原子替换
 	/** 键值存储 */
-	private transient KeyValueFileStore fileStore;
+	private transient KeyValueStore fileStore;
 	/** 键值存在名称 */
 	private String storeKey;
 
@@ -52,7 +51,7 @@ public class OrganizationUser extends AbstractFabricObject implements User, Seri
 	 * @param org 组织名称
 	 * @param fileStore 文件缓存
 	 */
-	public OrganizationUser(String name, String org, KeyValueFileStore fileStore) {
+	public OrganizationUser(String name, String org, KeyValueStore fileStore) {
 		this.name = name;
 
 		this.organization = org;
@@ -88,7 +87,7 @@ public class OrganizationUser extends AbstractFabricObject implements User, Seri
 	 * @param fileStore kv对象
 	 * @return boolean
 	 */
-	public static boolean isStored(String name, String org, KeyValueFileStore fileStore) {
+	public static boolean isStored(String name, String org, KeyValueStore fileStore) {
 		return fileStore.contains(toStoreKey(name, org));
 	}
 
@@ -111,38 +110,44 @@ public class OrganizationUser extends AbstractFabricObject implements User, Seri
 	}
 
 	/**
-	 * 将此用户的状态保存到键值存储区
+	 * 证书是否已过期，没有证书或证书无法解析时返回false
 	 */
-	public void storeState() {
-		logger.debug("向  store 缓存存储User：{}", this);
-		
-		ByteArrayOutputStream bos = null;
-		ObjectOutputStream oos = null;
+	public boolean isExpired() {
+		Date notAfter = getEnrollmentNotAfter();
+		return notAfter != null && notAfter.getTime() <= System.currentTimeMillis();
+	}
+
+	/**
+	 * 证书过期时间，没有证书或证书无法解析时返回null
+	 */
+	public Date getEnrollmentNotAfter() {
+		Enrollment current = this.enrollment;
+		if (current == null || current.getCert() == null) {
+			return null;
+		}
 		
 		try {
-			bos = new ByteArrayOutputStream();
-			oos = new ObjectOutputStream(bos);
-			
-			oos.writeObject(this);
-			oos.flush();
-			
-			fileStore.set(storeKey, Hex.toHexString(bos.toByteArray()));
-			// 内存缓存
-			fileStore.cacheMember(storeKey, this);
+			return CredentialCache.getDefault().getCertificate(current.getCert()).getNotAfter();
 		} catch (IOException e) {
-			logger.error("用户的状态保存到键值存储区异常", e);
-		} finally {
-			try {
-				if (oos != null) oos.close();
-				if (bos != null) bos.close();
-			} catch (IOException e) {
-				logger.error(e.getMessage(), e);
-			}
+			logger.warn("解析用户 {} 证书失败：{}", name, e.getMessage());
+			return null;
 		}
 	}
 
+	/**
+	 * 将此用户的状态保存到键值存储区
+	 */
+	public void storeState() {
+		logger.debug("向  store 缓存存储User：{}", this);
+		
+		fileStore.set(storeKey, UserStateCodec.encode(this));
+		// 内存缓存
+		fileStore.cacheMember(storeKey, this);
+	}
+
 	/**
 	 * 从键值存储中恢复此用户的状态（如果找到）。 如果找不到，什么都不要做。
+	 * 旧格式（Java序列化+Hex）的数据恢复后以新格式重新保存
 	 */
 	public OrganizationUser restoreState() {
 		String member = fileStore.get(storeKey);
@@ -150,18 +155,21 @@ public class OrganizationUser extends AbstractFabricObject implements User, Seri
 			return null;
 		}
 		
-		ByteArrayInputStream bis = null;
-		ObjectInputStream ois = null;
 		try {
-			// 用户被发现在关键值存储中，因此恢复状态
-			byte[] serialized = Hex.decode(member);
-
-			// 反序列化，解组对象
-			bis = new ByteArrayInputStream(serialized);
-			ois = new ObjectInputStream(bis);
-
-			OrganizationUser state = (OrganizationUser) ois.readObject();
-			if (state != null) {
+			if (UserStateCodec.isEncoded(member)) {
+				UserState state = UserStateCodec.decode(member);
+				
+				this.name = state.getName();
+				this.roles = state.getRoles();
+				this.account = state.getAccount();
+				this.affiliation = state.getAffiliation();
+				this.organization = state.getOrganization();
+				this.enrollmentSecret = state.getEnrollmentSecret();
+				this.enrollment = state.getEnrollment();
+				this.mspId = state.getMspId();
+			} else {
+				OrganizationUser state = UserStateCodec.decodeLegacy(member);
+				
 				this.name = state.name;
 				this.roles = state.roles;
 				this.account = state.account;
@@ -171,21 +179,15 @@ public class OrganizationUser extends AbstractFabricObject implements User, Seri
 				this.enrollment = state.enrollment;
 				this.mspId = state.mspId;
 				
-				logger.debug("从 store 缓存恢复User：{}", this);
-				return this;
+				logger.debug("转换旧格式存储User：{}", this.name);
+				fileStore.set(storeKey, UserStateCodec.encode(this));
 			}
+			
+			logger.debug("从 store 缓存恢复User：{}", this);
+			return this;
 		} catch (Exception e) {
 			throw new RuntimeException(String.format("Could not restore state of member %s", this.name), e);
-		} finally {
-			try {
-				if (bis != null) bis.close();
-				if (bis != null) bis.close();
-			} catch (IOException e) {
-				logger.error(e.getMessage(), e);
-			}
 		}
-		
-		return null;
 	}
 
 	public String getEnrollmentSecret() {
@@ -223,6 +225,10 @@ public class OrganizationUser extends AbstractFabricObject implements User, Seri
 	public String getName() {
 		return this.name;
 	}
+	
+	public String getOrganization() {
+		return organization;
+	}
 
 	@Override
 	public Set<String> getRoles() {
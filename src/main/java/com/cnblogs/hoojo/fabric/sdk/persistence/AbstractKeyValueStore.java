@@ -0,0 +1,277 @@
+package com.cnblogs.hoojo.fabric.sdk.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Enrollment;
+import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+
+import com.cnblogs.hoojo.fabric.sdk.common.AbstractFabricObject;
+import com.cnblogs.hoojo.fabric.sdk.model.Organization;
+import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * 键值存储系统基类，在 get/set/contains 基础存储操作之上实现用户、通道、证书的存取，
+ * 子类只需要实现底层存储引擎
+ * @author hoojo
+ * @createDate 2018年7月6日 上午10:16:47
+ * @file AbstractKeyValueStore.java
+ * @package com.cnblogs.hoojo.fabric.sdk.persistence
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public abstract class AbstractKeyValueStore extends AbstractFabricObject implements KeyValueStore {
+
+	/** 用户内存缓存，支持并发读取 */
+	private final Map<String, OrganizationUser> members = new ConcurrentHashMap<String, OrganizationUser>();
+	/** 按用户分段加锁，同一用户只构建一次，不同用户的构建互不阻塞 */
+	private final Striped<Lock> memberLocks = Striped.lazyWeakLock(64);
+	/** 私钥、证书解析缓存 */
+	protected final CredentialCache credentials = CredentialCache.getDefault();
+
+	static {
+		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+	}
+	
+	@Override
+	public void cacheMember(String memberStoreKey, OrganizationUser user) {
+		// 内存缓存
+		members.put(memberStoreKey, user);
+	}
+
+	/**
+	 * 获取 用户 ，如果不存在就创建，存在就从缓存中获取
+	 * @author hoojo
+	 * @createDate 2018年6月13日 上午11:21:12
+	 * @param name OrganizationUser Name
+	 * @param org Organization Name
+	 * @return OrganizationUser
+	 */
+	@Override
+	public OrganizationUser getMember(String name, String org) {
+		String memberStoreKey = OrganizationUser.toStoreKey(name, org);
+		OrganizationUser user = members.get(memberStoreKey);
+		if (null != user) {
+			logger.debug("从缓存获取Member：{}", user);
+			return user;
+		}
+		
+		Lock lock = memberLocks.get(memberStoreKey);
+		lock.lock();
+		try {
+			user = members.get(memberStoreKey);
+			if (null != user) {
+				return user;
+			}
+			
+			user = new OrganizationUser(name, org, this);
+			cacheMember(memberStoreKey, user);
+			
+			return user;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 * 判断KV文件缓存中是否存在用户
+	 * @author hoojo
+	 * @createDate 2018年6月13日 上午11:33:25
+	 * @param name OrganizationUser 用户名
+	 * @param org Organization 组织名称
+	 * @return boolean
+	 */
+	@Override
+	public boolean hasMember(String name, String org) {
+		if (members.containsKey(OrganizationUser.toStoreKey(name, org))) {
+			return true;
+		}
+		
+		return OrganizationUser.isStored(name, org, this);
+	}
+
+	/**
+	 * 从缓存获取 OrganizationUser ，如果缓存没有就构建 OrganizationUser
+	 * @author hoojo
+	 * @createDate 2018年6月13日 上午11:29:49
+	 * @param name OrganizationUser Name
+	 * @param org Organization Name
+	 * @param mspId Organization mspId
+	 * @param privateKeyFile 私钥
+	 * @param certificateFile 证书
+	 * @return OrganizationUser
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeySpecException
+	 */
+	@Override
+	public OrganizationUser getMember(String name, String org, String mspId, File privateKeyFile, File certificateFile)throws IOException, NoSuchAlgorithmException, NoSuchProviderException, InvalidKeySpecException {
+
+		String memberStoreKey = OrganizationUser.toStoreKey(name, org);
+		OrganizationUser user = members.get(memberStoreKey);
+		if (null != user) {
+			return user;
+		}
+		
+		Lock lock = memberLocks.get(memberStoreKey);
+		lock.lock();
+		try {
+			user = members.get(memberStoreKey);
+			if (null != user) {
+				return user;
+			}
+
+			user = new OrganizationUser(name, org, this);
+
+			user.setMspId(mspId);
+			// 登记认证，私钥和证书解析结果缓存，文件内容不变时不重复解析
+			user.setEnrollment(credentials.getEnrollment(privateKeyFile, certificateFile));
+			// 持久化存储
+			user.storeState();
+			
+			// 内存缓存
+			cacheMember(memberStoreKey, user);
+			
+			return user;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	static final class StoreEnrollement implements Enrollment, Serializable {
+
+		private static final long serialVersionUID = -2784835212445309006L;
+		private final PrivateKey privateKey;
+		private final String certificate;
+
+		public StoreEnrollement(PrivateKey privateKey, String certificate) {
+			this.certificate = certificate;
+			this.privateKey = privateKey;
+		}
+
+		@Override
+		public PrivateKey getKey() {
+			return privateKey;
+		}
+
+		@Override
+		public String getCert() {
+			return certificate;
+		}
+	}
+	
+	/**
+	 * 保存通道到缓存
+	 * @author hoojo
+	 * @createDate 2018年6月13日 上午11:23:51
+	 * @param channel Channel
+	 * @throws IOException
+	 * @throws InvalidArgumentException
+	 */
+	@Override
+	public void saveChannel(Channel channel) throws IOException, InvalidArgumentException {
+		saveChannel(channel.getName(), channel.serializeChannel());
+	}
+	
+	/**
+	 * 保存已序列化的通道到缓存
+	 * @author hoojo
+	 * @createDate 2018年7月17日 上午9:36:20
+	 * @param name 通道名称
+	 * @param serializedChannel 通道序列化数据
+	 */
+	@Override
+	public void saveChannel(String name, byte[] serializedChannel) {
+		logger.debug("保存通道到缓存: {}", name);
+		set("channel." + name, Hex.toHexString(serializedChannel));
+	}
+
+	/**
+	 * 从缓存获取通道，如果不存在就构建通道对象
+	 * @author hoojo
+	 * @createDate 2018年6月13日 上午11:24:13
+	 * @param client HFClient
+	 * @param name 通道名称
+	 * @return Channel
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws InvalidArgumentException
+	 */
+	@Override
+	public Channel getChannel(HFClient client, String name) throws IOException, ClassNotFoundException, InvalidArgumentException {
+		Channel channel = null;
+
+		String channelHex = get("channel." + name);
+		if (channelHex != null) {
+			channel = client.deSerializeChannel(Hex.decode(channelHex));
+			logger.debug("恢复通道：{}， channel:{}", name, channel);
+		} else {
+			logger.debug("没有恢复通道：{}", name);
+		}
+		
+		return channel;
+	}
+
+	/**
+	 * 保存客户端 证书 PEM tls key
+	 * @author hoojo
+	 * @createDate 2018年6月13日 上午11:25:13
+	 * @param organization 组织
+	 * @param key key
+	 */
+	@Override
+	public void storeClientPEMTLSKey(Organization organization, String key) {
+		set("clientPEMTLSKey." + organization.getName(), key);
+	}
+
+	/**
+	 * 保存客户端 证书 PEM tls key
+	 * @author hoojo
+	 * @createDate 2018年6月13日 上午11:25:13
+	 * @param organization 组织
+	 */
+	@Override
+	public String getClientPEMTLSKey(Organization organization) {
+		return get("clientPEMTLSKey." + organization.getName());
+	}
+
+	/**
+	 * 保存客户端证书   PEM tls cert 
+	 * @author hoojo
+	 * @createDate 2018年6月13日 上午11:26:09
+	 * @param organization Organization
+	 * @param certificate cert
+	 */
+	@Override
+	public void storeClientPEMTLSCertificate(Organization organization, String certificate) {
+		set("clientPEMTLSCertificate." + organization.getName(), certificate);
+	}
+
+	/**
+	 * 保存客户端证书   PEM tls cert 
+	 * @author hoojo
+	 * @createDate 2018年6月13日 上午11:26:09
+	 * @param organization Organization
+	 */
+	@Override
+	public String getClientPEMTLSCertificate(Organization organization) {
+		return get("clientPEMTLSCertificate." + organization.getName());
+	}
+}
\ No newline at end of file
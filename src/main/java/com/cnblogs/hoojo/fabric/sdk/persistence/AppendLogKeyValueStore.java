@@ -0,0 +1,448 @@
+package com.cnblogs.hoojo.fabric.sdk.persistence;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * 追加日志键值存储引擎：每次写入只在日志文件末尾追加一条带CRC校验的记录，内存索引保存每个key的最新值，
+ * 后台定期压缩日志，清除被覆盖和删除的旧记录。
+ * <pre>
+ * 记录格式：| crc32 (4) | keyLength (4) | valueLength (4, 删除为-1) | key | value |
+ * </pre>
+ * 启动时顺序回放日志重建索引，遇到校验失败或不完整的尾部记录（写入中断）时截断日志。
+ * 内存索引只在本进程内有效，存储在生命周期内独占日志旁的 <code>.lock</code> 文件锁，其他进程打开同一日志会失败。
+ * @author hoojo
+ * @createDate 2018年7月6日 下午2:30:18
+ * @file AppendLogKeyValueStore.java
+ * @package com.cnblogs.hoojo.fabric.sdk.persistence
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class AppendLogKeyValueStore extends AbstractKeyValueStore {
+
+	private final static Logger logger = LoggerFactory.getLogger(AppendLogKeyValueStore.class);
+
+	/** 记录头长度：crc32 + keyLength + valueLength */
+	private static final int HEADER_SIZE = 12;
+	/** 删除标记 */
+	private static final int TOMBSTONE = -1;
+
+	/** 默认压缩阈值：无效记录占日志的比例 */
+	public static final double DEFAULT_COMPACTION_RATIO = 0.5;
+	/** 默认压缩最小日志大小，日志小于该值时不压缩 */
+	public static final long DEFAULT_COMPACTION_MIN_SIZE = 1024 * 1024;
+	/** 默认压缩检查间隔（秒） */
+	public static final long DEFAULT_COMPACTION_INTERVAL = 60;
+
+	private final File logFile;
+	/** 内存索引，保存每个key的最新值和记录长度 */
+	private final Map<String, Entry> index = new ConcurrentHashMap<>();
+	/** 每次追加后是否强制刷盘 */
+	private final boolean sync;
+	private final double compactionRatio;
+	private final long compactionMinSize;
+	private final ScheduledExecutorService compactor;
+	/** 同一时间只执行一次压缩 */
+	private final Object compactLock = new Object();
+
+	/** 独占日志的文件锁 */
+	private final FileChannel lockChannel;
+	private final FileLock ownerLock;
+	/** 日志写入通道 */
+	private FileChannel channel;
+	/** 日志总长度 */
+	private long logSize;
+	/** 有效记录长度 */
+	private long liveSize;
+
+	public AppendLogKeyValueStore(File logFile) {
+		this(logFile, false, DEFAULT_COMPACTION_RATIO, DEFAULT_COMPACTION_MIN_SIZE, DEFAULT_COMPACTION_INTERVAL);
+	}
+
+	public AppendLogKeyValueStore(File logFile, boolean sync, double compactionRatio, long compactionMinSize, long compactionInterval) {
+		this.logFile = logFile.getAbsoluteFile();
+		this.sync = sync;
+		this.compactionRatio = compactionRatio;
+		this.compactionMinSize = compactionMinSize;
+
+		try {
+			this.lockChannel = FileChannel.open(new File(this.logFile.getAbsolutePath() + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			this.ownerLock = tryLock(lockChannel);
+		} catch (IOException e) {
+			throw new UncheckedIOException("锁定追加日志存储失败：" + this.logFile, e);
+		}
+		
+		try {
+			replay();
+			this.channel = openChannel();
+		} catch (IOException e) {
+			releaseOwnerLock();
+			throw new UncheckedIOException("加载追加日志存储失败：" + this.logFile, e);
+		}
+
+		this.compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("keyvalue-log-compactor-%d").setDaemon(true).build());
+		if (compactionInterval > 0) {
+			this.compactor.scheduleWithFixedDelay(this::compactIfNecessary, compactionInterval, compactionInterval, TimeUnit.SECONDS);
+		}
+
+		logger.debug("持久化KEY-VALUE追加日志文件：{}，记录数：{}，日志大小：{}", this.logFile, index.size(), logSize);
+	}
+
+	@Override
+	public String get(String name) {
+		Entry entry = index.get(name);
+
+		return entry == null ? null : entry.value;
+	}
+
+	@Override
+	public void set(String name, String value) {
+		append(name, value);
+	}
+
+	@Override
+	public void remove(String name) {
+		if (index.containsKey(name)) {
+			append(name, null);
+		}
+	}
+
+	@Override
+	public boolean contains(String name) {
+		return index.containsKey(name);
+	}
+
+	@Override
+	public synchronized void flush() {
+		try {
+			channel.force(false);
+		} catch (IOException e) {
+			logger.warn("Could not flush the keyvalue log \"{}\", reason: {}", logFile, e.getMessage());
+		}
+	}
+
+	@Override
+	public void close() {
+		compactor.shutdown();
+
+		synchronized (this) {
+			try {
+				channel.force(false);
+				channel.close();
+			} catch (IOException e) {
+				logger.warn("Could not close the keyvalue log \"{}\", reason: {}", logFile, e.getMessage());
+			}
+			
+			releaseOwnerLock();
+		}
+	}
+	
+	/**
+	 * 获取日志的独占锁，已被其他进程或本进程的其他存储实例持有时抛出异常
+	 * @author hoojo
+	 * @createDate 2018年7月9日 上午11:20:14
+	 */
+	private FileLock tryLock(FileChannel lockChannel) throws IOException {
+		FileLock lock = null;
+		try {
+			lock = lockChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// 本进程内已有其他实例打开了该日志
+		}
+		
+		if (lock == null) {
+			lockChannel.close();
+			throw new IllegalStateException("追加日志存储已被占用：" + logFile);
+		}
+		return lock;
+	}
+	
+	private void releaseOwnerLock() {
+		try {
+			ownerLock.release();
+			lockChannel.close();
+		} catch (IOException e) {
+			logger.warn("Could not release the keyvalue log lock \"{}\", reason: {}", logFile, e.getMessage());
+		}
+	}
+
+	/** 日志总长度 */
+	public synchronized long getLogSize() {
+		return logSize;
+	}
+
+	/**
+	 * 追加一条记录，value为null时追加删除标记。写入失败时截断已写入的部分记录，
+	 * 否则后续记录会追加在残缺记录之后，重启回放时在残缺记录处停止，丢失之后的全部记录
+	 * @author hoojo
+	 * @createDate 2018年7月6日 下午2:41:55
+	 */
+	private synchronized void append(String name, String value) {
+		ByteBuffer record = encode(name, value);
+		int size = record.remaining();
+
+		try {
+			while (record.hasRemaining()) {
+				channel.write(record);
+			}
+			if (sync) {
+				channel.force(false);
+			}
+		} catch (IOException e) {
+			rollback(e);
+			throw new UncheckedIOException("写入追加日志失败：" + logFile, e);
+		}
+
+		logSize += size;
+
+		Entry previous = value == null ? index.remove(name) : index.put(name, new Entry(value, size));
+		if (previous != null) {
+			liveSize -= previous.size;
+		}
+		if (value != null) {
+			liveSize += size;
+		}
+	}
+
+	/**
+	 * 截断写入失败的残缺记录，恢复到最后一条完整记录的末尾
+	 * @author hoojo
+	 * @createDate 2018年7月6日 下午2:46:18
+	 */
+	private void rollback(IOException cause) {
+		try {
+			channel.truncate(logSize);
+			channel.position(logSize);
+		} catch (IOException e) {
+			cause.addSuppressed(e);
+			logger.error("截断追加日志残缺记录失败：{}，offset: {}", logFile, logSize, e);
+		}
+	}
+
+	/**
+	 * 无效记录超过阈值时压缩日志
+	 * @author hoojo
+	 * @createDate 2018年7月6日 下午2:52:37
+	 */
+	private void compactIfNecessary() {
+		try {
+			synchronized (this) {
+				if (logSize < compactionMinSize || (logSize - liveSize) < logSize * compactionRatio) {
+					return;
+				}
+			}
+
+			compact();
+		} catch (Exception e) {
+			logger.warn("压缩追加日志 \"{}\" 失败：{}", logFile, e.getMessage());
+		}
+	}
+
+	/**
+	 * 压缩日志：在锁内复制索引快照，在锁外将快照中的有效记录写入新日志，读写不会等待压缩；
+	 * 最后在锁内把压缩期间追加到旧日志的记录复制到新日志末尾，再原子替换旧日志
+	 * @author hoojo
+	 * @createDate 2018年7月6日 下午2:55:10
+	 */
+	public void compact() throws IOException {
+		synchronized (compactLock) {
+			Map<String, Entry> snapshot;
+			long snapshotSize;
+			synchronized (this) {
+				snapshot = new HashMap<>(index);
+				snapshotSize = logSize;
+			}
+
+			Path target = logFile.toPath();
+			Path temp = new File(logFile.getAbsolutePath() + ".compact").toPath();
+
+			try (FileChannel output = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				long size = 0;
+				for (Map.Entry<String, Entry> item : snapshot.entrySet()) {
+					ByteBuffer record = encode(item.getKey(), item.getValue().value);
+					size += record.remaining();
+
+					while (record.hasRemaining()) {
+						output.write(record);
+					}
+				}
+
+				synchronized (this) {
+					if (!channel.isOpen()) {
+						logger.debug("追加日志已关闭，放弃压缩：{}", logFile);
+						return;
+					}
+					
+					// 压缩期间追加的记录，按原顺序复制到新日志末尾，回放时覆盖快照中的旧值
+					long before = logSize;
+					long appended = logSize - snapshotSize;
+					try (FileChannel input = FileChannel.open(target, StandardOpenOption.READ)) {
+						long copied = 0;
+						while (copied < appended) {
+							copied += input.transferTo(snapshotSize + copied, appended - copied, output);
+						}
+					}
+					output.force(true);
+
+					channel.close();
+					try {
+						Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					} catch (AtomicMoveNotSupportedException e) {
+						Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+					} finally {
+						channel = openChannel();
+					}
+
+					// 索引中每个key的最新记录都在新日志中，有效记录长度不变
+					logSize = size + appended;
+
+					logger.debug("压缩追加日志：{}，{} -> {} bytes，压缩期间追加：{} bytes", logFile, before, logSize, appended);
+				}
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	/**
+	 * 顺序回放日志，重建内存索引
+	 * @author hoojo
+	 * @createDate 2018年7月6日 下午3:04:48
+	 */
+	private void replay() throws IOException {
+		if (!logFile.exists()) {
+			return;
+		}
+
+		long length = logFile.length();
+		long offset = 0;
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+			while (offset < length) {
+				int crc = input.readInt();
+				int keyLength = input.readInt();
+				int valueLength = input.readInt();
+
+				if (keyLength < 0 || valueLength < TOMBSTONE || offset + HEADER_SIZE + keyLength + Math.max(valueLength, 0) > length) {
+					logger.warn("追加日志记录长度无效，offset: {}", offset);
+					break;
+				}
+
+				byte[] key = new byte[keyLength];
+				input.readFully(key);
+				byte[] value = valueLength == TOMBSTONE ? null : new byte[valueLength];
+				if (value != null) {
+					input.readFully(value);
+				}
+
+				if (crc != checksum(keyLength, valueLength, key, value)) {
+					logger.warn("追加日志记录CRC校验失败，offset: {}", offset);
+					break;
+				}
+
+				int size = HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+				String name = new String(key, UTF_8);
+
+				Entry previous = value == null ? index.remove(name) : index.put(name, new Entry(new String(value, UTF_8), size));
+				if (previous != null) {
+					liveSize -= previous.size;
+				}
+				if (value != null) {
+					liveSize += size;
+				}
+
+				offset += size;
+			}
+		} catch (EOFException e) {
+			logger.warn("追加日志尾部记录不完整，offset: {}", offset);
+		}
+
+		logSize = offset;
+		if (offset < length) {
+			// 截断写入中断或损坏的尾部记录
+			try (FileChannel truncate = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+				truncate.truncate(offset);
+			}
+			logger.warn("截断追加日志：{}，{} -> {} bytes", logFile, length, offset);
+		}
+	}
+
+	FileChannel openChannel() throws IOException {
+		return FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private static ByteBuffer encode(String name, String value) {
+		byte[] key = name.getBytes(UTF_8);
+		byte[] data = value == null ? null : value.getBytes(UTF_8);
+		int valueLength = data == null ? TOMBSTONE : data.length;
+
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + key.length + (data == null ? 0 : data.length));
+		record.putInt(checksum(key.length, valueLength, key, data));
+		record.putInt(key.length);
+		record.putInt(valueLength);
+		record.put(key);
+		if (data != null) {
+			record.put(data);
+		}
+		record.flip();
+
+		return record;
+	}
+
+	private static int checksum(int keyLength, int valueLength, byte[] key, byte[] value) {
+		CRC32 crc = new CRC32();
+
+		ByteBuffer lengths = ByteBuffer.allocate(8);
+		lengths.putInt(keyLength);
+		lengths.putInt(valueLength);
+		crc.update(lengths.array());
+		crc.update(key);
+		if (value != null) {
+			crc.update(value);
+		}
+
+		return (int) crc.getValue();
+	}
+
+	private static final class Entry {
+
+		private final String value;
+		/** 记录在日志中的长度 */
+		private final int size;
+
+		private Entry(String value, int size) {
+			this.value = value;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package com.cnblogs.hoojo.fabric.sdk.persistence;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.hyperledger.fabric.sdk.Enrollment;
+
+import com.cnblogs.hoojo.fabric.sdk.log.ApplicationLogging;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * 私钥、证书解析缓存。以内容的SHA-256指纹为key缓存解析后的 PrivateKey、X509Certificate，
+ * 相同内容只做一次ASN.1解析；文件按路径记录修改时间、长度和指纹，文件变化后重新计算指纹，指纹变化才重新解析。
+ * 键值存储和 UserManager 共用默认实例
+ * @author hoojo
+ * @createDate 2018年7月11日 上午9:20:44
+ * @file CredentialCache.java
+ * @package com.cnblogs.hoojo.fabric.sdk.persistence
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class CredentialCache extends ApplicationLogging {
+
+	private static final CredentialCache DEFAULT = new CredentialCache(1024);
+	
+	private static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
+	
+	/** 指纹 -> 解析后的私钥、证书、证书登记 */
+	private final Cache<String, Object> parsed;
+	/** 文件路径 -> 文件状态和内容指纹 */
+	private final Map<String, FileStamp> files = new ConcurrentHashMap<>();
+	
+	public CredentialCache(long maximumSize) {
+		this.parsed = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+	}
+	
+	public static CredentialCache getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * 解析PEM格式私钥
+	 * @author hoojo
+	 * @createDate 2018年7月11日 上午9:28:16
+	 */
+	public PrivateKey getPrivateKey(byte[] pem) throws IOException {
+		return get("key:" + fingerprint(pem), () -> parsePrivateKey(pem));
+	}
+	
+	/**
+	 * 解析PKCS#8编码的私钥
+	 * @author hoojo
+	 * @createDate 2018年7月11日 上午9:30:05
+	 */
+	public PrivateKey getPrivateKey(String algorithm, byte[] encoded) throws IOException {
+		return get("pkcs8:" + algorithm + ":" + fingerprint(encoded), () -> KeyFactory.getInstance(algorithm, PROVIDER).generatePrivate(new PKCS8EncodedKeySpec(encoded)));
+	}
+	
+	/**
+	 * 解析PEM格式私钥文件
+	 * @author hoojo
+	 * @createDate 2018年7月11日 上午9:31:47
+	 */
+	public PrivateKey getPrivateKey(File file) throws IOException {
+		FileStamp stamp = stamp(file);
+		return get("key:" + stamp.fingerprint, () -> parsePrivateKey(Files.readAllBytes(file.toPath())));
+	}
+	
+	/**
+	 * 解析PEM格式证书
+	 * @author hoojo
+	 * @createDate 2018年7月11日 上午9:33:20
+	 */
+	public X509Certificate getCertificate(String pem) throws IOException {
+		byte[] data = pem.getBytes(UTF_8);
+		return get("cert:" + fingerprint(data), () -> parseCertificate(data));
+	}
+	
+	/**
+	 * 解析PEM格式证书文件
+	 * @author hoojo
+	 * @createDate 2018年7月11日 上午9:34:52
+	 */
+	public X509Certificate getCertificate(File file) throws IOException {
+		FileStamp stamp = stamp(file);
+		return get("cert:" + stamp.fingerprint, () -> parseCertificate(Files.readAllBytes(file.toPath())));
+	}
+	
+	/**
+	 * 通过私钥和证书文件构建证书登记，文件内容不变时返回同一个对象
+	 * @author hoojo
+	 * @createDate 2018年7月11日 上午9:38:10
+	 */
+	public Enrollment getEnrollment(File privateKeyFile, File certificateFile) throws IOException {
+		FileStamp keyStamp = stamp(privateKeyFile);
+		FileStamp certStamp = stamp(certificateFile);
+		
+		return get("enrollment:" + keyStamp.fingerprint + ":" + certStamp.fingerprint, () -> {
+			PrivateKey privateKey = getPrivateKey(privateKeyFile);
+			String certificate = new String(Files.readAllBytes(certificateFile.toPath()), UTF_8);
+			
+			return new AbstractKeyValueStore.StoreEnrollement(privateKey, certificate);
+		});
+	}
+	
+	/** 清除所有缓存 */
+	public void invalidateAll() {
+		parsed.invalidateAll();
+		files.clear();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> T get(String key, Parser<T> parser) throws IOException {
+		try {
+			return (T) parsed.get(key, () -> {
+				logger.debug("解析证书/私钥：{}", key);
+				return parser.parse();
+			});
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("解析证书/私钥失败：" + e.getCause().getMessage(), e.getCause());
+		}
+	}
+	
+	/**
+	 * 文件的修改时间和长度不变时直接使用记录的指纹，否则重新读取文件计算指纹
+	 * @author hoojo
+	 * @createDate 2018年7月11日 上午9:45:31
+	 */
+	private FileStamp stamp(File file) throws IOException {
+		String path = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+		
+		FileStamp stamp = files.get(path);
+		if (stamp != null && stamp.lastModified == lastModified && stamp.length == length) {
+			return stamp;
+		}
+		
+		stamp = new FileStamp(lastModified, length, fingerprint(Files.readAllBytes(file.toPath())));
+		files.put(path, stamp);
+		
+		return stamp;
+	}
+	
+	private static String fingerprint(byte[] data) {
+		return Hashing.sha256().hashBytes(data).toString();
+	}
+	
+	private static PrivateKey parsePrivateKey(byte[] data) throws IOException {
+		final Reader pemReader = new StringReader(new String(data, UTF_8));
+
+		final PrivateKeyInfo pemPair;
+		try (PEMParser pemParser = new PEMParser(pemReader)) {
+			pemPair = (PrivateKeyInfo) pemParser.readObject();
+		}
+
+		return new JcaPEMKeyConverter().setProvider(PROVIDER).getPrivateKey(pemPair);
+	}
+	
+	private static X509Certificate parseCertificate(byte[] data) throws CertificateException {
+		return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(data));
+	}
+	
+	@FunctionalInterface
+	private interface Parser<T> {
+		T parse() throws IOException, GeneralSecurityException;
+	}
+	
+	private static final class FileStamp {
+		
+		private final long lastModified;
+		private final long length;
+		private final String fingerprint;
+		
+		private FileStamp(long lastModified, long length, String fingerprint) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.fingerprint = fingerprint;
+		}
+	}
+}
@@ -7,37 +7,40 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.Reader;
-import java.io.Serializable;
-import java.io.StringReader;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.PrivateKey;
-import java.security.Security;
-import java.security.spec.InvalidKeySpecException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.apache.commons.io.IOUtils;
-import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.openssl.PEMParser;
-import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
-import org.bouncycastle.util.encoders.Hex;
-import org.hyperledger.fabric.sdk.Channel;
-import org.hyperledger.fabric.sdk.Enrollment;
-import org.hyperledger.fabric.sdk.HFClient;
-import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.cnblogs.hoojo.fabric.sdk.common.AbstractFabricObject;
-import com.cnblogs.hoojo.fabric.sdk.model.Organization;
-import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * 本地文件键值存储系统 ，做数据持久化存储。可以用redis、db等其他方式实现
+ * <p>
+ * 并发模型：读写都在内存中的并发Map完成，多个请求线程可以同时读写；写入只记录变更的key，
+ * 由单个落盘线程延迟合并后写入文件。落盘时持有存储文件旁的 <code>.lock</code> 文件锁，
+ * 先重新读取文件，只覆盖本进程变更过的key，再原子替换文件，同一主机上的多个服务进程共享存储时不会互相覆盖。
+ * 落盘线程还会定期检查文件变化，将其他进程写入的数据合并到内存。
+ * </p>
  * @author hoojo
  * @createDate 2018年6月12日 下午4:21:41
  * @file KeyValueFileStore.java
@@ -47,282 +50,344 @@ import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
  * @email hoojo_@126.com
  * @version 1.0
  */
-public class KeyValueFileStore extends AbstractFabricObject {
+public class KeyValueFileStore extends AbstractKeyValueStore {
 
 	private final static Logger logger = LoggerFactory.getLogger(KeyValueFileStore.class);
 	
-	private final Map<String, OrganizationUser> members = new HashMap<String, OrganizationUser>();
-
+	/** 默认写入延迟（毫秒），延迟时间内的多次写入合并为一次落盘 */
+	public static final long DEFAULT_FLUSH_DELAY = 200;
+	/** 默认检查其他进程写入的间隔（毫秒） */
+	public static final long DEFAULT_REFRESH_INTERVAL = 5000;
+	/** 落盘失败后重试的最小间隔（毫秒） */
+	private static final long RETRY_DELAY = 1000;
+	
+	/** 同一进程内对同一文件的文件锁需要先互斥，FileLock 在同一JVM内重复加锁会抛出异常 */
+	private static final Map<String, Object> FILE_MUTEXES = new ConcurrentHashMap<>();
+	
 	private String storeFilePath;
+	private final Object fileMutex;
+	
+	/** 内存数据，读写都在内存中完成 */
+	private final Map<String, String> data = new ConcurrentHashMap<>();
+	/** 未落盘的变更key，删除的key在内存数据中不存在 */
+	private final Set<String> dirtyKeys = ConcurrentHashMap.newKeySet();
+	/** 写入延迟（毫秒），小于等于0时每次写入都立即落盘 */
+	private final long flushDelay;
+	/** 单线程落盘执行器，所有文件读写都在该线程中串行执行 */
+	private final ScheduledExecutorService writer;
+	/** 是否已安排落盘任务 */
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	/** 进程退出时将未落盘的数据写入文件 */
+	private final Thread shutdownHook;
+	
+	/** 最后一次读写时文件的修改时间和长度，用于判断其他进程是否写入 */
+	private long lastModified;
+	private long lastLength;
 	
-	static {
-		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
-	}
-
 	public KeyValueFileStore(File file) {
+		this(file, DEFAULT_FLUSH_DELAY, DEFAULT_REFRESH_INTERVAL);
+	}
+	
+	public KeyValueFileStore(File file, long flushDelay) {
+		this(file, flushDelay, DEFAULT_REFRESH_INTERVAL);
+	}
+	
+	public KeyValueFileStore(File file, long flushDelay, long refreshInterval) {
 		this.storeFilePath = file.getAbsolutePath();
+		this.fileMutex = FILE_MUTEXES.computeIfAbsent(storeFilePath, key -> new Object());
+		this.flushDelay = flushDelay;
+		
+		this.writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("keyvalue-store-writer-%d").setDaemon(true).build());
+		
+		Properties properties = lockAndRun(true, () -> loadProperties());
+		for (String name : properties.stringPropertyNames()) {
+			data.put(name, properties.getProperty(name));
+		}
+		
+		if (refreshInterval > 0) {
+			this.writer.scheduleWithFixedDelay(this::refreshIfModified, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+		}
+		
+		this.shutdownHook = new Thread(this::storeProperties, "keyvalue-store-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
 		
 		logger.debug("持久化KEY-VALUE存储系统文件：{}", this.storeFilePath);
 	}
 
+	@Override
 	public String get(String name) {
-		Properties properties = loadProperties();
-		
-		return properties.getProperty(name);
+		return data.get(name);
 	}
 
+	@Override
 	public void set(String name, String value) {
-		Properties properties = loadProperties();
+		// 在同一个key的compute中标记变更，保证与落盘线程的合并操作互斥
+		data.compute(name, (key, previous) -> {
+			dirtyKeys.add(key);
+			return value;
+		});
 		
-		try (OutputStream output = new FileOutputStream(storeFilePath)) {
-			properties.setProperty(name, value);
-			properties.store(output, "");
-			output.close();
-		} catch (IOException e) {
-			logger.warn("Could not save the keyvalue store, reason: {}", e.getMessage());
-		}
+		scheduleFlush();
 	}
 	
-	public boolean contains(String name) {
-		Properties properties = loadProperties();
+	@Override
+	public void remove(String name) {
+		data.compute(name, (key, previous) -> {
+			dirtyKeys.add(key);
+			return null;
+		});
 		
-		return properties.containsKey(name);
+		scheduleFlush();
+	}
+	
+	@Override
+	public boolean contains(String name) {
+		return data.containsKey(name);
 	}
 
 	private Properties loadProperties() {
 		Properties properties = new Properties();
 		
-		try (InputStream input = new FileInputStream(storeFilePath)) {
+		File file = new File(storeFilePath);
+		try (InputStream input = new FileInputStream(file)) {
 			properties.load(input);
-			input.close();
 		} catch (FileNotFoundException e) {
 			logger.warn("Could not find the file \"{}\"", storeFilePath);
 		} catch (IOException e) {
 			logger.warn("Could not load keyvalue store from file \"{}\", reason:{}", storeFilePath, e.getMessage());
 		}
+		
+		lastModified = file.lastModified();
+		lastLength = file.length();
 
 		return properties;
 	}
 	
-	public void cacheMember(String memberStoreKey, OrganizationUser user) {
-		// 内存缓存
-		members.put(memberStoreKey, user);
-	}
-
 	/**
-	 * 获取 用户 ，如果不存在就创建，存在就从缓存中获取
+	 * 安排一次延迟落盘，延迟时间内的多次写入合并为一次
 	 * @author hoojo
-	 * @createDate 2018年6月13日 上午11:21:12
-	 * @param name OrganizationUser Name
-	 * @param org Organization Name
-	 * @return OrganizationUser
+	 * @createDate 2018年7月5日 上午9:42:17
 	 */
-	public OrganizationUser getMember(String name, String org) {
-		String memberStoreKey = OrganizationUser.toStoreKey(name, org);
-		OrganizationUser user = members.get(memberStoreKey);
-		if (null != user) {
-			logger.debug("从缓存获取Member：{}", user);
-			return user;
+	private void scheduleFlush() {
+		if (flushDelay <= 0) {
+			flush();
+			return;
 		}
 		
-		user = new OrganizationUser(name, org, this);
-		cacheMember(memberStoreKey, user);
-		
-		return user;
+		schedule(flushDelay);
 	}
-
+	
+	private void schedule(long delay) {
+		if (flushScheduled.compareAndSet(false, true)) {
+			try {
+				writer.schedule(() -> {
+					flushScheduled.set(false);
+					storeProperties();
+				}, delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				flushScheduled.set(false);
+				logger.warn("存储已关闭，数据未落盘：{}", storeFilePath);
+			}
+		}
+	}
+	
 	/**
-	 * 
-	 * 判断KV文件缓存中是否存在用户
+	 * 立即将内存中的数据写入文件，在落盘线程中执行并等待完成
 	 * @author hoojo
-	 * @createDate 2018年6月13日 上午11:33:25
-	 * @param name OrganizationUser 用户名
-	 * @param org Organization 组织名称
-	 * @return boolean
+	 * @createDate 2018年7月5日 上午9:45:03
 	 */
-	public boolean hasMember(String name, String org) {
-		if (members.containsKey(OrganizationUser.toStoreKey(name, org))) {
-			return true;
-		}
-		
-		return OrganizationUser.isStored(name, org, this);
+	@Override
+	public void flush() {
+		runOnWriter(this::storeProperties);
 	}
-
+	
 	/**
-	 * 从缓存获取 OrganizationUser ，如果缓存没有就构建 OrganizationUser
+	 * 立即重新读取文件，合并其他进程写入的数据
 	 * @author hoojo
-	 * @createDate 2018年6月13日 上午11:29:49
-	 * @param name OrganizationUser Name
-	 * @param org Organization Name
-	 * @param mspId Organization mspId
-	 * @param privateKeyFile 私钥
-	 * @param certificateFile 证书
-	 * @return OrganizationUser
-	 * @throws IOException
-	 * @throws NoSuchAlgorithmException
-	 * @throws NoSuchProviderException
-	 * @throws InvalidKeySpecException
+	 * @createDate 2018年7月9日 上午10:12:40
 	 */
-	public OrganizationUser getMember(String name, String org, String mspId, File privateKeyFile, File certificateFile)throws IOException, NoSuchAlgorithmException, NoSuchProviderException, InvalidKeySpecException {
-
-		try {
-			String memberStoreKey = OrganizationUser.toStoreKey(name, org);
-			OrganizationUser user = members.get(memberStoreKey);
-			if (null != user) {
-				return user;
-			}
-
-			user = new OrganizationUser(name, org, this);
-
-			String certificate = new String(IOUtils.toByteArray(new FileInputStream(certificateFile)), "UTF-8");
-			PrivateKey privateKey = getPrivateKeyFromBytes(IOUtils.toByteArray(new FileInputStream(privateKeyFile)));
-
-			user.setMspId(mspId);
-			// 登记认证
-			user.setEnrollment(new StoreEnrollement(privateKey, certificate));
-			// 持久化存储
-			user.storeState();
-			
-			// 内存缓存
-			cacheMember(memberStoreKey, user);
-			
-			return user;
-		} catch (IOException e) {
-			throw e;
-		} catch (NoSuchAlgorithmException e) {
-			throw e;
-		} catch (NoSuchProviderException e) {
-			throw e;
-		} catch (InvalidKeySpecException e) {
-			throw e;
-		} catch (ClassCastException e) {
-			throw e;
-		}
+	public void refresh() {
+		runOnWriter(() -> lockAndRun(true, () -> {
+			merge(loadProperties());
+			return null;
+		}));
 	}
-
+	
 	/**
-	 * 将byte字节私钥转换成 PrivateKey 对象
+	 * 写入未落盘的数据，释放落盘线程
 	 * @author hoojo
-	 * @createDate 2018年6月13日 上午11:28:54
-	 * @param data key
-	 * @return PrivateKey
-	 * @throws IOException
-	 * @throws NoSuchProviderException
-	 * @throws NoSuchAlgorithmException
-	 * @throws InvalidKeySpecException
+	 * @createDate 2018年7月5日 上午9:46:30
 	 */
-	private static PrivateKey getPrivateKeyFromBytes(byte[] data) throws IOException, NoSuchProviderException, NoSuchAlgorithmException, InvalidKeySpecException {
-		final Reader pemReader = new StringReader(new String(data));
-
-		final PrivateKeyInfo pemPair;
-		try (PEMParser pemParser = new PEMParser(pemReader)) {
-			pemPair = (PrivateKeyInfo) pemParser.readObject();
+	@Override
+	public void close() {
+		flush();
+		writer.shutdown();
+		
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// 进程正在退出
 		}
-
-		PrivateKey privateKey = new JcaPEMKeyConverter().setProvider(BouncyCastleProvider.PROVIDER_NAME).getPrivateKey(pemPair);
-
-		return privateKey;
 	}
-
-	private static final class StoreEnrollement implements Enrollment, Serializable {
-
-		private static final long serialVersionUID = -2784835212445309006L;
-		private final PrivateKey privateKey;
-		private final String certificate;
-
-		public StoreEnrollement(PrivateKey privateKey, String certificate) {
-			this.certificate = certificate;
-			this.privateKey = privateKey;
-		}
-
-		@Override
-		public PrivateKey getKey() {
-			return privateKey;
-		}
-
-		@Override
-		public String getCert() {
-			return certificate;
+	
+	private void runOnWriter(Runnable task) {
+		try {
+			writer.submit(task).get();
+		} catch (RejectedExecutionException e) {
+			// 落盘线程已关闭，直接在当前线程执行
+			task.run();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.warn("Could not save the keyvalue store, reason: {}", e.getCause().getMessage());
 		}
 	}
 	
 	/**
-	 * 保存通道到缓存
-	 * @author hoojo
-	 * @createDate 2018年6月13日 上午11:23:51
-	 * @param channel Channel
-	 * @throws IOException
-	 * @throws InvalidArgumentException
-	 */
-	public void saveChannel(Channel channel) throws IOException, InvalidArgumentException {
-		logger.debug("保存通道到缓存: {}", channel.getName());;
-		set("channel." + channel.getName(), Hex.toHexString(channel.serializeChannel()));
-	}
-
-	/**
-	 * 从缓存获取通道，如果不存在就构建通道对象
+	 * 文件被其他进程修改时，重新读取并合并到内存
 	 * @author hoojo
-	 * @createDate 2018年6月13日 上午11:24:13
-	 * @param client HFClient
-	 * @param name 通道名称
-	 * @return Channel
-	 * @throws IOException
-	 * @throws ClassNotFoundException
-	 * @throws InvalidArgumentException
+	 * @createDate 2018年7月9日 上午10:08:21
 	 */
-	public Channel getChannel(HFClient client, String name) throws IOException, ClassNotFoundException, InvalidArgumentException {
-		Channel channel = null;
-
-		String channelHex = get("channel." + name);
-		if (channelHex != null) {
-			channel = client.deSerializeChannel(Hex.decode(channelHex));
-			logger.debug("恢复通道：{}， channel:{}", name, channel);
-		} else {
-			logger.debug("没有恢复通道：{}", name);
+	private void refreshIfModified() {
+		File file = new File(storeFilePath);
+		if (file.lastModified() == lastModified && file.length() == lastLength) {
+			return;
 		}
 		
-		return channel;
+		try {
+			lockAndRun(true, () -> {
+				merge(loadProperties());
+				return null;
+			});
+		} catch (Exception e) {
+			logger.warn("Could not refresh the keyvalue store \"{}\", reason: {}", storeFilePath, e.getMessage());
+		}
 	}
-
+	
 	/**
-	 * 保存客户端 证书 PEM tls key
+	 * 将文件中的数据合并到内存，未落盘的key保留内存中的值
 	 * @author hoojo
-	 * @createDate 2018年6月13日 上午11:25:13
-	 * @param organization 组织
-	 * @param key key
+	 * @createDate 2018年7月9日 上午10:05:16
 	 */
-	public void storeClientPEMTLSKey(Organization organization, String key) {
-		set("clientPEMTLSKey." + organization.getName(), key);
+	private void merge(Properties properties) {
+		for (String name : properties.stringPropertyNames()) {
+			String value = properties.getProperty(name);
+			data.compute(name, (key, current) -> dirtyKeys.contains(key) ? current : value);
+		}
+		
+		for (String name : data.keySet()) {
+			if (!properties.containsKey(name)) {
+				data.computeIfPresent(name, (key, current) -> dirtyKeys.contains(key) ? current : null);
+			}
+		}
 	}
-
+	
 	/**
-	 * 保存客户端 证书 PEM tls key
+	 * 持有文件锁，重新读取文件后写入本进程的变更，先写入临时文件，再通过重命名原子替换存储文件，避免写入中断导致文件损坏。
+	 * 替换成功后才清除变更标记，写入失败（磁盘已满、没有权限）时变更保留，稍后重新落盘
 	 * @author hoojo
-	 * @createDate 2018年6月13日 上午11:25:13
-	 * @param organization 组织
+	 * @createDate 2018年7月5日 上午9:51:12
 	 */
-	public String getClientPEMTLSKey(Organization organization) {
-		return get("clientPEMTLSKey." + organization.getName());
+	private void storeProperties() {
+		if (dirtyKeys.isEmpty()) {
+			return;
+		}
+		
+		lockAndRun(false, () -> {
+			Properties properties = loadProperties();
+			
+			// 本次写入的值，删除的key值为null
+			Map<String, String> written = new HashMap<>();
+			for (String name : dirtyKeys) {
+				String value = data.get(name);
+				written.put(name, value);
+				
+				if (value == null) {
+					properties.remove(name);
+				} else {
+					properties.setProperty(name, value);
+				}
+			}
+			
+			Path target = Paths.get(storeFilePath);
+			Path temp = Paths.get(storeFilePath + ".tmp");
+			
+			try (OutputStream output = new FileOutputStream(temp.toFile())) {
+				properties.store(output, "");
+			} catch (IOException e) {
+				logger.warn("Could not save the keyvalue store, reason: {}", e.getMessage());
+				schedule(Math.max(flushDelay, RETRY_DELAY));
+				return null;
+			}
+			
+			try {
+				try {
+					Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (IOException e) {
+				logger.warn("Could not replace the keyvalue store file \"{}\", reason: {}", storeFilePath, e.getMessage());
+				schedule(Math.max(flushDelay, RETRY_DELAY));
+				return null;
+			}
+			
+			// 已写入文件的值清除变更标记，写入期间再次变更的key保留
+			for (Map.Entry<String, String> entry : written.entrySet()) {
+				data.compute(entry.getKey(), (key, current) -> {
+					if (Objects.equals(current, entry.getValue())) {
+						dirtyKeys.remove(key);
+					}
+					return current;
+				});
+			}
+			
+			lastModified = target.toFile().lastModified();
+			lastLength = target.toFile().length();
+			
+			merge(properties);
+			return null;
+		});
 	}
-
+	
 	/**
-	 * 保存客户端证书   PEM tls cert 
+	 * 持有进程内互斥锁和跨进程文件锁执行任务，读取使用共享锁，写入使用排他锁
 	 * @author hoojo
-	 * @createDate 2018年6月13日 上午11:26:09
-	 * @param organization Organization
-	 * @param certificate cert
+	 * @createDate 2018年7月9日 上午9:56:33
 	 */
-	public void storeClientPEMTLSCertificate(Organization organization, String certificate) {
-		set("clientPEMTLSCertificate." + organization.getName(), certificate);
+	private <T> T lockAndRun(boolean shared, LockedTask<T> task) {
+		synchronized (fileMutex) {
+			Path lockFile = Paths.get(storeFilePath + ".lock");
+			
+			FileChannel channel = null;
+			FileLock lock = null;
+			try {
+				channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				lock = channel.lock(0, Long.MAX_VALUE, shared);
+			} catch (IOException e) {
+				// 文件系统不支持文件锁时，退化为只在进程内互斥
+				logger.warn("Could not lock the keyvalue store \"{}\", reason: {}", lockFile, e.getMessage());
+			}
+			
+			try {
+				return task.run();
+			} finally {
+				try {
+					if (lock != null) {
+						lock.release();
+					}
+					if (channel != null) {
+						channel.close();
+					}
+				} catch (IOException e) {
+					logger.warn("Could not release the keyvalue store lock \"{}\", reason: {}", lockFile, e.getMessage());
+				}
+			}
+		}
 	}
-
-	/**
-	 * 保存客户端证书   PEM tls cert 
-	 * @author hoojo
-	 * @createDate 2018年6月13日 上午11:26:09
-	 * @param organization Organization
-	 */
-	public String getClientPEMTLSCertificate(Organization organization) {
-		return get("clientPEMTLSCertificate." + organization.getName());
+	
+	@FunctionalInterface
+	private interface LockedTask<T> {
+		T run();
 	}
-}
\ No newline at end of file
+}
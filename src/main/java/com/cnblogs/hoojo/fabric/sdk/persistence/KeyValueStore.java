@@ -0,0 +1,80 @@
+package com.cnblogs.hoojo.fabric.sdk.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.spec.InvalidKeySpecException;
+
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+
+import com.cnblogs.hoojo.fabric.sdk.model.Organization;
+import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
+
+/**
+ * 键值存储系统接口，做用户、通道、证书数据的持久化存储。
+ * 可以用本地文件、追加日志、redis、db等方式实现
+ * @author hoojo
+ * @createDate 2018年7月6日 上午10:05:12
+ * @file KeyValueStore.java
+ * @package com.cnblogs.hoojo.fabric.sdk.persistence
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public interface KeyValueStore {
+
+	/** 获取值，不存在返回null */
+	String get(String name);
+
+	/** 保存值 */
+	void set(String name, String value);
+
+	/** 删除值 */
+	void remove(String name);
+
+	/** 是否存在 */
+	boolean contains(String name);
+
+	/** 将未持久化的数据写入存储 */
+	void flush();
+
+	/** 写入未持久化的数据，释放存储资源 */
+	void close();
+
+	/** 内存缓存用户 */
+	void cacheMember(String memberStoreKey, OrganizationUser user);
+
+	/** 获取用户，如果不存在就创建，存在就从缓存中获取 */
+	OrganizationUser getMember(String name, String org);
+
+	/** 判断存储中是否存在用户 */
+	boolean hasMember(String name, String org);
+
+	/** 从缓存获取用户，如果缓存没有就通过私钥和证书文件构建用户 */
+	OrganizationUser getMember(String name, String org, String mspId, File privateKeyFile, File certificateFile) throws IOException, NoSuchAlgorithmException, NoSuchProviderException, InvalidKeySpecException;
+
+	/** 保存通道 */
+	void saveChannel(Channel channel) throws IOException, InvalidArgumentException;
+
+	/** 保存已序列化的通道，避免重复序列化 */
+	void saveChannel(String name, byte[] serializedChannel);
+
+	/** 获取通道，不存在返回null */
+	Channel getChannel(HFClient client, String name) throws IOException, ClassNotFoundException, InvalidArgumentException;
+
+	/** 保存客户端 证书 PEM tls key */
+	void storeClientPEMTLSKey(Organization organization, String key);
+
+	/** 获取客户端 证书 PEM tls key */
+	String getClientPEMTLSKey(Organization organization);
+
+	/** 保存客户端证书   PEM tls cert */
+	void storeClientPEMTLSCertificate(Organization organization, String certificate);
+
+	/** 获取客户端证书   PEM tls cert */
+	String getClientPEMTLSCertificate(Organization organization);
+}
@@ -0,0 +1,303 @@
+package com.cnblogs.hoojo.fabric.sdk.persistence;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.hyperledger.fabric.sdk.Enrollment;
+
+import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
+
+/**
+ * 用户状态编解码，替代Java序列化+Hex的存储格式。
+ * <pre>
+ * 存储值：PREFIX + Base64(| magic (2) | version (1) | name | organization | mspId | account | affiliation | secret | roles | enrollment |)
+ * 字符串：| length (4, null为-1) | UTF-8 bytes |
+ * 角色：| count (4, null为-1) | 字符串... |
+ * 证书：| present (1) | cert | key algorithm | key length (4) | PKCS#8 key |
+ * </pre>
+ * 旧格式（Hex编码的Java序列化数据）只允许反序列化白名单内的类，恢复后会以新格式重新保存。
+ * @author hoojo
+ * @createDate 2018年7月10日 上午9:32:18
+ * @file UserStateCodec.java
+ * @package com.cnblogs.hoojo.fabric.sdk.persistence
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public final class UserStateCodec {
+
+	/** 新格式存储值前缀，旧格式为纯Hex字符，不会出现该前缀 */
+	public static final String PREFIX = "u:";
+	
+	private static final short MAGIC = 0x4655;
+	private static final byte VERSION = 1;
+	
+	/**
+	 * 旧格式反序列化只允许用户、证书、角色集合和私钥（BouncyCastle 私钥或 JDK 私钥的 KeyRep 替身）用到的类。
+	 * 证书包括从文件加载的 StoreEnrollement 和 CA 认证返回的 X509Enrollment（1.1 版 SDK 为 HFCAEnrollment，带公钥的 KeyPair）
+	 */
+	private static final Set<String> LEGACY_WHITELIST = new HashSet<>(Arrays.asList(
+		OrganizationUser.class.getName(), AbstractKeyValueStore.StoreEnrollement.class.getName(),
+		"org.hyperledger.fabric.sdk.identity.X509Enrollment", "org.hyperledger.fabric_ca.sdk.HFCAEnrollment", "java.security.KeyPair",
+		"java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeSet",
+		"org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey", "org.bouncycastle.jce.provider.JCEECPrivateKey",
+		"org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey", "org.bouncycastle.jce.provider.JCEECPublicKey",
+		"java.security.KeyRep", "java.security.KeyRep$Type", "java.lang.Enum", "java.math.BigInteger", "java.lang.Number", "[B"
+	));
+	/** 旧版本的证书类，已移到 AbstractKeyValueStore */
+	private static final String LEGACY_ENROLLMENT = "com.cnblogs.hoojo.fabric.sdk.persistence.KeyValueFileStore$StoreEnrollement";
+
+	private UserStateCodec() {
+	}
+	
+	/**
+	 * 是否为新格式的存储值
+	 * @author hoojo
+	 * @createDate 2018年7月10日 上午9:35:41
+	 */
+	public static boolean isEncoded(String value) {
+		return value != null && value.startsWith(PREFIX);
+	}
+	
+	/**
+	 * 编码用户状态
+	 * @author hoojo
+	 * @createDate 2018年7月10日 上午9:38:07
+	 * @param user 用户
+	 * @return 存储值
+	 */
+	public static String encode(OrganizationUser user) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+		
+		try (DataOutputStream out = new DataOutputStream(bos)) {
+			out.writeShort(MAGIC);
+			out.writeByte(VERSION);
+			
+			writeString(out, user.getName());
+			writeString(out, user.getOrganization());
+			writeString(out, user.getMspId());
+			writeString(out, user.getAccount());
+			writeString(out, user.getAffiliation());
+			writeString(out, user.getEnrollmentSecret());
+			
+			Set<String> roles = user.getRoles();
+			out.writeInt(roles == null ? -1 : roles.size());
+			if (roles != null) {
+				for (String role : roles) {
+					writeString(out, role);
+				}
+			}
+			
+			// 只有X.509证书可以编码，Idemix 等没有私钥的证书需要重新认证获取
+			Enrollment enrollment = user.getEnrollment();
+			boolean present = enrollment != null && enrollment.getCert() != null && enrollment.getKey() != null && enrollment.getKey().getEncoded() != null;
+			out.writeBoolean(present);
+			if (present) {
+				PrivateKey key = enrollment.getKey();
+				byte[] encoded = key.getEncoded();
+				
+				writeString(out, enrollment.getCert());
+				writeString(out, key.getAlgorithm());
+				out.writeInt(encoded.length);
+				out.write(encoded);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("编码用户状态失败：" + user.getName(), e);
+		}
+		
+		return PREFIX + Base64.getEncoder().encodeToString(bos.toByteArray());
+	}
+	
+	/**
+	 * 解码用户状态
+	 * @author hoojo
+	 * @createDate 2018年7月10日 上午9:46:52
+	 * @param value 存储值
+	 * @return 用户状态
+	 */
+	public static UserState decode(String value) throws IOException {
+		if (!isEncoded(value)) {
+			throw new IOException("不支持的用户状态格式");
+		}
+		
+		byte[] data = Base64.getDecoder().decode(value.substring(PREFIX.length()));
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+			if (in.readShort() != MAGIC) {
+				throw new IOException("用户状态数据格式错误");
+			}
+			
+			byte version = in.readByte();
+			if (version != VERSION) {
+				throw new IOException("不支持的用户状态版本：" + version);
+			}
+			
+			UserState state = new UserState();
+			state.name = readString(in);
+			state.organization = readString(in);
+			state.mspId = readString(in);
+			state.account = readString(in);
+			state.affiliation = readString(in);
+			state.enrollmentSecret = readString(in);
+			
+			int count = readLength(in, 4);
+			if (count >= 0) {
+				Set<String> roles = new LinkedHashSet<>(count);
+				for (int i = 0; i < count; i++) {
+					roles.add(readString(in));
+				}
+				state.roles = roles;
+			}
+			
+			if (in.readBoolean()) {
+				String certificate = readString(in);
+				String algorithm = readString(in);
+				byte[] encoded = new byte[readLength(in, 1)];
+				in.readFully(encoded);
+				
+				PrivateKey key = CredentialCache.getDefault().getPrivateKey(algorithm, encoded);
+				state.enrollment = new AbstractKeyValueStore.StoreEnrollement(key, certificate);
+			}
+			
+			return state;
+		}
+	}
+	
+	/**
+	 * 解码旧格式（Hex编码的Java序列化数据），只允许反序列化白名单内的类
+	 * @author hoojo
+	 * @createDate 2018年7月10日 上午10:02:15
+	 * @param value 存储值
+	 * @return 用户
+	 */
+	public static OrganizationUser decodeLegacy(String value) throws IOException, ClassNotFoundException {
+		byte[] serialized = Hex.decode(value);
+		
+		try (ObjectInputStream ois = new WhitelistObjectInputStream(new ByteArrayInputStream(serialized))) {
+			return (OrganizationUser) ois.readObject();
+		}
+	}
+	
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+	
+	private static String readString(DataInputStream in) throws IOException {
+		int length = readLength(in, 1);
+		if (length < 0) {
+			return null;
+		}
+		
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+	
+	/**
+	 * 读取长度，长度不能超过剩余数据，避免损坏的数据按错误的长度分配内存
+	 * @param unit 每个元素最少占用的字节数
+	 * @return 长度，-1 表示 null
+	 */
+	private static int readLength(DataInputStream in, int unit) throws IOException {
+		int length = in.readInt();
+		if (length < -1 || (long) length * unit > in.available()) {
+			throw new IOException("用户状态数据已损坏，长度：" + length);
+		}
+		return length;
+	}
+	
+	/**
+	 * 解码后的用户状态
+	 * @author hoojo
+	 * @createDate 2018年7月10日 上午9:41:26
+	 */
+	public static final class UserState {
+		
+		private String name;
+		private String organization;
+		private String mspId;
+		private String account;
+		private String affiliation;
+		private String enrollmentSecret;
+		private Set<String> roles;
+		private Enrollment enrollment;
+		
+		public String getName() {
+			return name;
+		}
+		
+		public String getOrganization() {
+			return organization;
+		}
+		
+		public String getMspId() {
+			return mspId;
+		}
+		
+		public String getAccount() {
+			return account;
+		}
+		
+		public String getAffiliation() {
+			return affiliation;
+		}
+		
+		public String getEnrollmentSecret() {
+			return enrollmentSecret;
+		}
+		
+		public Set<String> getRoles() {
+			return roles;
+		}
+		
+		public Enrollment getEnrollment() {
+			return enrollment;
+		}
+	}
+	
+	private static final class WhitelistObjectInputStream extends ObjectInputStream {
+		
+		private WhitelistObjectInputStream(ByteArrayInputStream input) throws IOException {
+			super(input);
+		}
+		
+		@Override
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+			ObjectStreamClass desc = super.readClassDescriptor();
+			if (LEGACY_ENROLLMENT.equals(desc.getName())) {
+				return ObjectStreamClass.lookup(AbstractKeyValueStore.StoreEnrollement.class);
+			}
+			return desc;
+		}
+		
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			if (LEGACY_WHITELIST.contains(desc.getName())) {
+				return super.resolveClass(desc);
+			}
+			
+			throw new InvalidClassException(desc.getName(), "不允许反序列化的类");
+		}
+	}
+}
@@ -1,9 +1,19 @@
 package com.cnblogs.hoojo.fabric.sdk.config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
 
 import org.junit.Test;
 
+import com.cnblogs.hoojo.fabric.sdk.model.Organization;
+import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
+import com.cnblogs.hoojo.fabric.sdk.persistence.KeyValueFileStore;
+
 /**
  * <b>function:</b> configuration test
  * @author hoojo
@@ -36,4 +46,30 @@ public class DefaultConfigurationTest {
 		assertEquals("src/test/fixture/sdkintegration/network_configs".replaceAll("/", "\\\\"), config.getNetworkConfigDirFilePath());
 		
 	}
+	
+	@Test
+	public void testReload() throws IOException {
+		DefaultConfiguration config = DefaultConfiguration.getConfig();
+		
+		File file = File.createTempFile("config-reload", ".properties");
+		file.deleteOnExit();
+		KeyValueFileStore store = new KeyValueFileStore(file);
+		
+		Organization org = config.getOrganization("peerOrg1");
+		OrganizationUser admin = new OrganizationUser("admin", org.getName(), store);
+		org.setAdmin(admin);
+		
+		assertTrue(config.reload());
+		
+		Organization reloaded = config.getOrganization("peerOrg1");
+		assertNotSame(org, reloaded);
+		assertSame(admin, reloaded.getAdmin());
+		assertEquals(org.getMSPID(), reloaded.getMSPID());
+		assertEquals(org.getPeerNames(), reloaded.getPeerNames());
+		for (String peerName : reloaded.getPeerNames()) {
+			assertEquals(reloaded.getMSPID(), config.getPeerMSPID(peerName));
+		}
+		
+		store.close();
+	}
 }
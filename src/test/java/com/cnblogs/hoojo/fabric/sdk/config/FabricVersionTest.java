@@ -0,0 +1,48 @@
+package com.cnblogs.hoojo.fabric.sdk.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * <b>function:</b> Fabric version test
+ * @author hoojo
+ * @createDate 2018年9月12日 上午11:48:10
+ * @file FabricVersionTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.config
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class FabricVersionTest {
+
+	@Test
+	public void testCompare() {
+		assertTrue(FabricVersion.of("v1.3").isAtOrAfter("1.3"));
+		assertTrue(FabricVersion.of("v1.3").isAtOrAfter("1.2"));
+		assertTrue(FabricVersion.of("v1.2").isBefore("1.3"));
+		
+		// 逐段按数字比较，1.10 不能按小数解析成 1.1
+		assertTrue(FabricVersion.of("v1.10").isAtOrAfter("1.9"));
+		assertFalse(FabricVersion.of("v1.9").isAtOrAfter("1.10"));
+		assertTrue(FabricVersion.of("v2.0").isAtOrAfter("1.4.3"));
+	}
+	
+	@Test
+	public void testEquals() {
+		assertEquals(FabricVersion.of("v1.3"), FabricVersion.of("1.3.0"));
+		assertEquals(FabricVersion.of("v1.3").hashCode(), FabricVersion.of("1.3.0").hashCode());
+		assertEquals(0, FabricVersion.of("1.0").compareTo(FabricVersion.of("v1.0")));
+		
+		assertSame(FabricVersion.of("v1.1"), FabricVersion.of("v1.1"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testIllegalVersion() {
+		FabricVersion.of("v1.x");
+	}
+}
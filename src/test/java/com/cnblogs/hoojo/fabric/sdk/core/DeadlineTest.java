@@ -0,0 +1,65 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * <b>function:</b> deadline test
+ * @author hoojo
+ * @createDate 2018年9月25日 下午2:31:18
+ * @file DeadlineTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class DeadlineTest {
+
+	@Test
+	public void testAfter() {
+		// 没有设置超时时间时使用全局配置
+		assertNull(Deadline.after(0));
+		assertNull(Deadline.after(-1));
+		
+		Deadline deadline = Deadline.after(10000);
+		assertFalse(deadline.isExpired());
+		assertTrue(deadline.remaining() <= 10000 && deadline.remaining() > 9000);
+		assertEquals(500, deadline.cap(500));
+		assertTrue(deadline.cap(120000) <= 10000);
+	}
+	
+	@Test
+	public void testSplit() {
+		Deadline deadline = Deadline.after(10000);
+		Deadline proposal = deadline.split(0.5);
+		
+		assertTrue(proposal.remaining() <= 5000 && proposal.remaining() > 4000);
+		assertSame(proposal, Deadline.min(deadline, proposal));
+		assertSame(deadline, Deadline.min(deadline, null));
+		assertSame(deadline, Deadline.min(null, deadline));
+	}
+	
+	@Test
+	public void testCheck() throws Exception {
+		Deadline deadline = Deadline.after(1);
+		Thread.sleep(20);
+		
+		assertTrue(deadline.isExpired());
+		assertEquals(0, deadline.remaining());
+		try {
+			deadline.check("背书提议");
+			fail();
+		} catch (TimeoutException e) {
+			assertTrue(e.getMessage().startsWith("背书提议"));
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.protos.common.MspPrincipal.MSPPrincipal;
+import org.hyperledger.fabric.protos.common.MspPrincipal.MSPRole;
+import org.hyperledger.fabric.protos.common.Policies.SignaturePolicy;
+import org.hyperledger.fabric.protos.common.Policies.SignaturePolicy.NOutOf;
+import org.hyperledger.fabric.protos.common.Policies.SignaturePolicyEnvelope;
+import org.junit.Test;
+
+/**
+ * <b>function:</b> endorsement policy test
+ * @author hoojo
+ * @createDate 2018年9月14日 下午3:02:11
+ * @file EndorsementPolicyTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class EndorsementPolicyTest {
+
+	private Map<String, List<String>> candidates = new HashMap<>();
+	private Map<String, Double> scores = new HashMap<>();
+	
+	{
+		candidates.put("Org1MSP", Arrays.asList("peer0.org1", "peer1.org1", "peer2.org1", "peer3.org1"));
+		candidates.put("Org2MSP", Arrays.asList("peer0.org2", "peer1.org2", "peer2.org2", "peer3.org2"));
+		
+		scores.put("peer0.org1", 50D);
+		scores.put("peer1.org1", 10D);
+		scores.put("peer2.org2", 20D);
+	}
+	
+	@Test
+	public void testAnd() {
+		EndorsementPolicy policy = EndorsementPolicy.parse(envelope(outOf(2, signedBy(0), signedBy(1)), "Org1MSP", "Org2MSP"));
+		
+		assertEquals(Arrays.asList(Arrays.asList(0, 1)), policy.getCombinations());
+		// 每个组织只选一个评分最小的节点
+		assertEquals(Arrays.asList("peer1.org1", "peer2.org2"), policy.select(candidates, peer -> scores.getOrDefault(peer, 30D)));
+	}
+	
+	@Test
+	public void testOr() {
+		EndorsementPolicy policy = EndorsementPolicy.parse(envelope(outOf(1, signedBy(0), signedBy(1)), "Org1MSP", "Org2MSP"));
+		
+		assertEquals(2, policy.getCombinations().size());
+		assertEquals(Arrays.asList("peer1.org1"), policy.select(candidates, peer -> scores.getOrDefault(peer, 30D)));
+	}
+	
+	@Test
+	public void testSamePrincipal() {
+		EndorsementPolicy policy = EndorsementPolicy.parse(envelope(outOf(2, signedBy(0), signedBy(0), signedBy(1)), "Org1MSP", "Org2MSP"));
+		
+		// 同一个身份出现两次需要两个不同的节点签名
+		List<String> peers = policy.select(Collections.singletonMap("Org1MSP", Arrays.asList("peer0.org1", "peer1.org1")), peer -> 1);
+		assertEquals(Arrays.asList("peer0.org1", "peer1.org1"), peers);
+	}
+	
+	@Test
+	public void testUnsatisfied() {
+		EndorsementPolicy policy = EndorsementPolicy.parse(envelope(outOf(2, signedBy(0), signedBy(1)), "Org1MSP", "Org2MSP"));
+		
+		assertNull(policy.select(Collections.singletonMap("Org1MSP", candidates.get("Org1MSP")), peer -> 1));
+	}
+	
+	private SignaturePolicy signedBy(int index) {
+		return SignaturePolicy.newBuilder().setSignedBy(index).build();
+	}
+	
+	private SignaturePolicy outOf(int n, SignaturePolicy... rules) {
+		return SignaturePolicy.newBuilder().setNOutOf(NOutOf.newBuilder().setN(n).addAllRules(Arrays.asList(rules))).build();
+	}
+	
+	private SignaturePolicyEnvelope envelope(SignaturePolicy rule, String... mspIds) {
+		SignaturePolicyEnvelope.Builder builder = SignaturePolicyEnvelope.newBuilder().setVersion(0).setRule(rule);
+		for (String mspId : mspIds) {
+			MSPRole role = MSPRole.newBuilder().setMspIdentifier(mspId).setRole(MSPRole.MSPRoleType.MEMBER).build();
+			builder.addIdentities(MSPPrincipal.newBuilder().setPrincipalClassification(MSPPrincipal.Classification.ROLE).setPrincipal(role.toByteString()));
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,108 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cnblogs.hoojo.fabric.sdk.core.EndpointRegistry.Endpoint;
+import com.cnblogs.hoojo.fabric.sdk.core.EndpointRegistry.EndpointType;
+
+/**
+ * <b>function:</b> EndpointRegistry test
+ * @author hoojo
+ * @createDate 2018年7月20日 上午11:20:05
+ * @file EndpointRegistryTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class EndpointRegistryTest {
+
+	private File serverCert;
+	private File otherCert;
+	
+	@Before
+	public void setup() throws Exception {
+		serverCert = File.createTempFile("server", ".crt");
+		otherCert = File.createTempFile("other", ".crt");
+		Files.write(serverCert.toPath(), "server".getBytes(UTF_8));
+		Files.write(otherCert.toPath(), "other".getBytes(UTF_8));
+	}
+	
+	@After
+	public void clean() {
+		serverCert.delete();
+		otherCert.delete();
+	}
+	
+	private static Properties properties(File pemFile) {
+		Properties props = new Properties();
+		props.setProperty("pemFile", pemFile.getAbsolutePath());
+		props.put("grpc.NettyChannelBuilderOption.keepAliveWithoutCalls", new Object[] { true });
+		return props;
+	}
+	
+	@Test
+	public void testAcquireRelease() throws Exception {
+		EndpointRegistry registry = new EndpointRegistry(0);
+		
+		Endpoint foo = registry.acquire("foo", EndpointType.PEER, "peer0", "grpc://localhost:7051", properties(serverCert));
+		Endpoint bar = registry.acquire("bar", EndpointType.PEER, "peer0", "grpc://localhost:7051", properties(serverCert));
+		assertSame(foo, bar);
+		assertEquals(2, foo.getReferenceCount());
+		
+		// TLS 属性不同的端点分开登记
+		Endpoint other = registry.acquire("foo", EndpointType.PEER, "peer0", "grpc://localhost:7051", properties(otherCert));
+		assertNotSame(foo, other);
+		assertEquals(2, registry.getEndpoints().size());
+		
+		registry.release("foo");
+		assertEquals(1, foo.getReferenceCount());
+		assertEquals(1, registry.evictIdle());
+		
+		registry.release("bar");
+		assertEquals(1, registry.evictIdle());
+		assertEquals(0, registry.getEndpoints().size());
+	}
+	
+	@Test
+	public void testIdleTimeout() throws Exception {
+		EndpointRegistry registry = new EndpointRegistry(60000);
+		
+		registry.acquire("foo", EndpointType.ORDERER, "orderer", "grpc://localhost:7050", properties(serverCert));
+		registry.release("foo");
+		
+		assertEquals(0, registry.evictIdle());
+		assertEquals(1, registry.getEndpoints().size());
+	}
+	
+	@Test
+	public void testLoadPem() throws Exception {
+		EndpointRegistry registry = new EndpointRegistry(0);
+		
+		Endpoint endpoint = registry.acquire("foo", EndpointType.PEER, "peer0", "grpcs://localhost:7051", properties(serverCert));
+		Properties props = endpoint.getProperties();
+		assertFalse(props.containsKey("pemFile"));
+		assertEquals("server\n", new String((byte[]) props.get("pemBytes"), UTF_8));
+		
+		// 证书文件修改后重新读取
+		Files.write(serverCert.toPath(), "renewed".getBytes(UTF_8));
+		serverCert.setLastModified(serverCert.lastModified() + 2000);
+		
+		Endpoint renewed = registry.acquire("bar", EndpointType.PEER, "peer0", "grpcs://localhost:7051", properties(serverCert));
+		assertNotSame(endpoint, renewed);
+		assertEquals("renewed\n", new String((byte[]) renewed.getProperties().get("pemBytes"), UTF_8));
+	}
+}
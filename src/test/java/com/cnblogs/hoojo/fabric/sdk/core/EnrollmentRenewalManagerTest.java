@@ -0,0 +1,187 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.sdk.Enrollment;
+import org.hyperledger.fabric.sdk.identity.X509Enrollment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cnblogs.hoojo.fabric.sdk.core.EnrollmentRenewalManager.RenewalKey;
+import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
+import com.cnblogs.hoojo.fabric.sdk.persistence.KeyValueFileStore;
+
+/**
+ * <b>function:</b> EnrollmentRenewalManager test
+ * @author hoojo
+ * @createDate 2018年7月16日 下午2:10:45
+ * @file EnrollmentRenewalManagerTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class EnrollmentRenewalManagerTest {
+
+	private static final long RENEW_BEFORE = TimeUnit.DAYS.toMillis(1);
+	private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+	private File storeFile;
+	private KeyValueFileStore store;
+	private EnrollmentRenewalManager manager;
+
+	/** 模拟CA：记录重新认证的用户，新证书10天后过期 */
+	private final List<String> reenrolled = new ArrayList<>();
+	private final EnrollmentRenewalManager.Reenroller ca = user -> {
+		reenrolled.add(user.getName());
+
+		((TestUser) user).notAfter = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(10));
+		return newEnrollment();
+	};
+
+	@Before
+	public void setup() throws Exception {
+		storeFile = File.createTempFile("keyvalue-store", ".properties");
+		storeFile.delete();
+
+		store = new KeyValueFileStore(storeFile);
+		manager = new EnrollmentRenewalManager(RENEW_BEFORE, TimeUnit.MINUTES.toMillis(1));
+	}
+
+	@After
+	public void clean() {
+		manager.close();
+		store.close();
+		storeFile.delete();
+		new File(storeFile.getAbsolutePath() + ".lock").delete();
+	}
+
+	@Test
+	public void testRenewalKeyOrder() {
+		RenewalKey a2 = new RenewalKey(2, "user.a");
+		RenewalKey b2 = new RenewalKey(2, "user.b");
+		RenewalKey c1 = new RenewalKey(1, "user.c");
+
+		List<RenewalKey> keys = new ArrayList<>(Arrays.asList(b2, a2, c1));
+		Collections.sort(keys);
+		assertEquals(Arrays.asList(c1, a2, b2), keys);
+
+		// 查询边界key排在同一时间的所有用户之后，下一时间的用户之前
+		RenewalKey bound = new RenewalKey(2, null);
+		assertTrue(bound.compareTo(b2) > 0);
+		assertTrue(bound.compareTo(new RenewalKey(3, "user.a")) < 0);
+		assertEquals(0, bound.compareTo(new RenewalKey(2, null)));
+	}
+
+	@Test
+	public void testRegisterReplace() throws Exception {
+		TestUser user = newUser("user1", TimeUnit.DAYS.toMillis(10));
+		manager.register(user, ca);
+		assertEquals(user.notAfter.getTime() - RENEW_BEFORE, manager.getDueTime(user));
+
+		// 重复注册替换之前的计划
+		user.notAfter = new Date(user.notAfter.getTime() + TimeUnit.DAYS.toMillis(10));
+		manager.register(user, ca);
+		assertEquals(1, manager.size());
+		assertEquals(user.notAfter.getTime() - RENEW_BEFORE, manager.getDueTime(user));
+
+		manager.unregister(user);
+		assertEquals(0, manager.size());
+		assertEquals(-1, manager.getDueTime(user));
+	}
+
+	@Test
+	public void testRenewDue() throws Exception {
+		// 1小时后过期，已进入重新认证时间；10天后过期的不重新认证
+		TestUser due = newUser("due", TimeUnit.HOURS.toMillis(1));
+		TestUser later = newUser("later", TimeUnit.DAYS.toMillis(10));
+		manager.register(due, ca);
+		manager.register(later, ca);
+
+		Enrollment previous = due.getEnrollment();
+		long laterDueTime = manager.getDueTime(later);
+
+		manager.renewDue();
+		assertEquals(Collections.singletonList("due"), reenrolled);
+		assertNotSame(previous, due.getEnrollment());
+
+		// 按新证书重新安排，未到期的用户计划不变
+		assertEquals(2, manager.size());
+		assertEquals(due.notAfter.getTime() - RENEW_BEFORE, manager.getDueTime(due));
+		assertEquals(laterDueTime, manager.getDueTime(later));
+
+		manager.renewDue();
+		assertEquals(1, reenrolled.size());
+	}
+
+	@Test
+	public void testRetryAfterFailure() throws Exception {
+		TestUser user = newUser("user1", TimeUnit.HOURS.toMillis(1));
+		Enrollment enrollment = user.getEnrollment();
+
+		List<String> attempts = new ArrayList<>();
+		manager.register(user, u -> {
+			attempts.add(u.getName());
+			throw new IllegalStateException("ca unavailable");
+		});
+
+		long before = System.currentTimeMillis();
+		manager.renewDue();
+		long after = System.currentTimeMillis();
+
+		// 重新认证失败，证书不变，1分钟后重试
+		assertEquals(1, attempts.size());
+		assertSame(enrollment, user.getEnrollment());
+		assertEquals(1, manager.size());
+
+		long dueTime = manager.getDueTime(user);
+		assertTrue(dueTime >= before + RETRY_DELAY && dueTime <= after + RETRY_DELAY);
+
+		// 未到重试时间不会再次重新认证
+		manager.renewDue();
+		assertEquals(1, attempts.size());
+	}
+
+	private TestUser newUser(String name, long expiresIn) throws Exception {
+		TestUser user = new TestUser(name, "org1", store);
+		user.setEnrollment(newEnrollment());
+		user.notAfter = new Date(System.currentTimeMillis() + expiresIn);
+
+		return user;
+	}
+
+	private static Enrollment newEnrollment() throws Exception {
+		return new X509Enrollment(KeyPairGenerator.getInstance("EC").generateKeyPair().getPrivate(), "-----BEGIN CERTIFICATE-----");
+	}
+
+	/** 证书过期时间可以直接设置的用户，不需要真实的证书 */
+	private static class TestUser extends OrganizationUser {
+
+		private static final long serialVersionUID = 1L;
+
+		private volatile Date notAfter;
+
+		private TestUser(String name, String org, KeyValueFileStore store) {
+			super(name, org, store);
+		}
+
+		@Override
+		public Date getEnrollmentNotAfter() {
+			return notAfter;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.cnblogs.hoojo.fabric.sdk.entity.QueryPage;
+
+/**
+ * <b>function:</b> paged query iterator test
+ * @author hoojo
+ * @createDate 2018年9月20日 下午2:15:33
+ * @file PagedQueryIteratorTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class PagedQueryIteratorTest {
+
+	/** 模拟 chaincode 按书签分页返回 0 ~ total-1 */
+	private static QueryPage<Integer> page(String bookmark, int pageSize, int total) {
+		int start = bookmark.isEmpty() ? 0 : Integer.parseInt(bookmark);
+		
+		List<Integer> records = new ArrayList<>();
+		for (int i = start; i < Math.min(start + pageSize, total); i++) {
+			records.add(i);
+		}
+		return new QueryPage<>(records, String.valueOf(start + records.size()));
+	}
+	
+	@Test
+	public void testIterator() {
+		PagedQueryIterator<Integer> iterator = new PagedQueryIterator<>(bookmark -> page(bookmark, 10, 25), Runnable::run, 10);
+		
+		int expected = 0;
+		while (iterator.hasNext()) {
+			assertEquals(expected++, iterator.next().intValue());
+		}
+		assertEquals(25, expected);
+		assertEquals(3, iterator.getPageCount());
+	}
+	
+	@Test
+	public void testExactPages() {
+		// 最后一页正好满页，再查询一次空页后结束
+		PagedQueryIterator<Integer> iterator = new PagedQueryIterator<>(bookmark -> page(bookmark, 10, 20), Runnable::run, 10);
+		
+		assertEquals(20, iterator.stream().count());
+		assertEquals(3, iterator.getPageCount());
+	}
+	
+	@Test
+	public void testStreamLazy() {
+		PagedQueryIterator<Integer> iterator = new PagedQueryIterator<>(bookmark -> page(bookmark, 10, 1000), Runnable::run, 10);
+		
+		List<Integer> first = iterator.stream().limit(15).collect(Collectors.toList());
+		assertEquals(15, first.size());
+		// 只查询了前两页和预取的第三页
+		assertEquals(2, iterator.getPageCount());
+	}
+	
+	@Test
+	public void testFailure() {
+		PagedQueryIterator<Integer> iterator = new PagedQueryIterator<>(bookmark -> {
+			if (!bookmark.isEmpty()) {
+				throw new IllegalStateException("peer unavailable");
+			}
+			return page(bookmark, 10, 100);
+		}, Runnable::run, 10);
+		
+		for (int i = 0; i < 10; i++) {
+			iterator.next();
+		}
+		
+		try {
+			iterator.hasNext();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals(IllegalStateException.class, e.getCause().getClass());
+		}
+		assertFalse(iterator.hasNext());
+	}
+	
+	@Test
+	public void testRejectedPrefetch() {
+		// 执行器已满拒绝预取时，在遍历线程中查询
+		PagedQueryIterator<Integer> iterator = new PagedQueryIterator<>(bookmark -> page(bookmark, 10, 25), command -> {
+			throw new RejectedExecutionException();
+		}, 10);
+		
+		assertEquals(25, iterator.stream().count());
+		assertEquals(3, iterator.getPageCount());
+	}
+}
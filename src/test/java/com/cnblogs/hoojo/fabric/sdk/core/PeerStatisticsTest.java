@@ -0,0 +1,72 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * <b>function:</b> peer statistics test
+ * @author hoojo
+ * @createDate 2018年9月17日 下午3:26:40
+ * @file PeerStatisticsTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class PeerStatisticsTest {
+
+	@Test
+	public void testScore() {
+		PeerStatistics statistics = new PeerStatistics();
+		
+		statistics.recordSuccess("peer0", 10);
+		statistics.recordSuccess("peer1", 100);
+		
+		assertTrue(statistics.getScore("peer0") < statistics.getScore("peer1"));
+		// 没有调用记录的节点优先尝试
+		assertTrue(statistics.getScore("peer2") < statistics.getScore("peer0"));
+		
+		statistics.recordFailure("peer0");
+		assertFalse(statistics.isAvailable("peer0"));
+		assertTrue(statistics.getErrorRate("peer0") > 0);
+		
+		statistics.recordSuccess("peer0", 10);
+		assertTrue(statistics.isAvailable("peer0"));
+	}
+	
+	@Test
+	public void testPercentile() {
+		PeerStatistics statistics = new PeerStatistics();
+		
+		for (int i = 1; i <= 10; i++) {
+			statistics.recordSuccess("peer0", i);
+		}
+		// 样本不足
+		assertEquals(-1, statistics.getLatencyPercentile("peer0", 0.95));
+		
+		for (int i = 11; i <= 100; i++) {
+			statistics.recordSuccess("peer0", i);
+		}
+		// 只保留最近 64 个样本：37 ~ 100
+		assertEquals(97, statistics.getLatencyPercentile("peer0", 0.95));
+		assertEquals(-1, statistics.getLatencyPercentile("peer1", 0.95));
+	}
+	
+	@Test
+	public void testSuccessWithoutLatency() {
+		PeerStatistics statistics = new PeerStatistics();
+		
+		statistics.recordSuccess("peer0", 10);
+		statistics.recordFailure("peer0");
+		assertFalse(statistics.isAvailable("peer0"));
+		
+		// 多个节点共用一次调用，耗时未知：恢复可用，不影响耗时统计
+		statistics.recordSuccess("peer0");
+		assertTrue(statistics.isAvailable("peer0"));
+		assertEquals(10, statistics.getLatency("peer0"), 0);
+	}
+}
@@ -0,0 +1,166 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse;
+import org.hyperledger.fabric.sdk.ChaincodeResponse;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.hyperledger.fabric.sdk.SDKUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.protobuf.ByteString;
+
+import sun.misc.Unsafe;
+
+/**
+ * <b>function:</b> 交易提议响应分类基准测试，对比旧的分类方式（成功/失败两个 LinkedList，每次计算一致性集合）
+ * 和 TransactionManager.checkTransactionProposal 的单次遍历分类（只记录第一个成功/失败响应，逐个比较响应内容）。
+ * 两种分类方式与各自版本的代码保持一致，响应由合成的 ProposalResponse 组成，不连接网络。
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.cnblogs.hoojo.fabric.sdk.core.ProposalResponseBenchmark
+ * </pre>
+ * @author hoojo
+ * @createDate 2018年9月14日 下午4:12:36
+ * @file ProposalResponseBenchmark.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseG1GC")
+public class ProposalResponseBenchmark {
+
+	/** 背书节点数量 */
+	@Param({ "2", "4", "8" })
+	private int peers;
+
+	private Collection<ProposalResponse> responses;
+
+	@Setup
+	public void setup() throws Exception {
+		byte[] payload = new byte[512];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) i;
+		}
+
+		responses = new ArrayList<>(peers);
+		for (int i = 0; i < peers; i++) {
+			// 每个节点的响应内容相同，但来自不同的网络消息，是不同的对象
+			responses.add(newResponse("tx-" + i, ByteString.copyFrom(payload)));
+		}
+	}
+
+	@Benchmark
+	public void classifyLegacy(Blackhole blackhole) throws Exception {
+		Collection<ProposalResponse> successResponses = new LinkedList<>();
+		Collection<ProposalResponse> failedResponses = new LinkedList<>();
+
+		for (ProposalResponse response : responses) {
+			if (response.getStatus() == ProposalResponse.Status.SUCCESS) {
+				successResponses.add(response);
+			} else {
+				failedResponses.add(response);
+			}
+		}
+
+		Collection<Set<ProposalResponse>> proposalConsistencySets = SDKUtils.getProposalConsistencySets(responses);
+		if (proposalConsistencySets.size() != 1) {
+			throw new IllegalStateException("响应不一致：" + proposalConsistencySets.size());
+		}
+
+		blackhole.consume(successResponses.size());
+		blackhole.consume(failedResponses.size());
+		blackhole.consume(successResponses.iterator().next());
+	}
+
+	@Benchmark
+	public void classify(Blackhole blackhole) {
+		ProposalResponse firstSuccess = null;
+		ProposalResponse firstFailed = null;
+		int failed = 0;
+		boolean consistent = true;
+
+		for (ProposalResponse response : responses) {
+			if (response.getStatus() == ProposalResponse.Status.SUCCESS) {
+				if (firstSuccess == null) {
+					firstSuccess = response;
+					consistent = response.isVerified();
+				} else if (consistent) {
+					consistent = response.isVerified() && response.getProposalResponse().getPayload().equals(firstSuccess.getProposalResponse().getPayload());
+				}
+			} else {
+				if (firstFailed == null) {
+					firstFailed = response;
+				}
+				failed++;
+			}
+		}
+
+		if (firstSuccess == null || !consistent) {
+			throw new IllegalStateException("响应不一致");
+		}
+
+		blackhole.consume(responses.size() - failed);
+		blackhole.consume(failed);
+		blackhole.consume(firstSuccess);
+	}
+
+	/**
+	 * 合成已验证签名的成功响应。ProposalResponse 的构造方法不公开，且不同 SDK 版本参数不同，
+	 * 这里直接分配对象并设置分类用到的字段
+	 */
+	private static ProposalResponse newResponse(String txId, ByteString payload) throws Exception {
+		Field unsafeField = Unsafe.class.getDeclaredField("theUnsafe");
+		unsafeField.setAccessible(true);
+		Unsafe unsafe = (Unsafe) unsafeField.get(null);
+
+		ProposalResponse response = (ProposalResponse) unsafe.allocateInstance(ProposalResponse.class);
+		setField(ChaincodeResponse.class, response, "status", ChaincodeResponse.Status.SUCCESS);
+		setField(ChaincodeResponse.class, response, "transactionID", txId);
+		setField(ChaincodeResponse.class, response, "message", "OK");
+		setField(ProposalResponse.class, response, "isVerified", true);
+
+		response.setProposalResponse(FabricProposalResponse.ProposalResponse.newBuilder()
+				.setPayload(payload)
+				.setResponse(FabricProposalResponse.Response.newBuilder().setStatus(200).setPayload(ByteString.copyFrom("OK", UTF_8)))
+				.build());
+
+		return response;
+	}
+
+	private static void setField(Class<?> type, Object target, String name, Object value) throws Exception {
+		Field field = type.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(ProposalResponseBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,146 @@
+package com.cnblogs.hoojo.fabric.sdk.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hyperledger.fabric.sdk.ChaincodeID;
+import org.hyperledger.fabric.sdk.Enrollment;
+import org.hyperledger.fabric.sdk.TransactionRequest.Type;
+import org.hyperledger.fabric.sdk.User;
+import org.junit.Test;
+
+import com.cnblogs.hoojo.fabric.sdk.entity.QueryResultEntity;
+import com.cnblogs.hoojo.fabric.sdk.entity.TransactionEntity;
+import com.google.protobuf.ByteString;
+
+/**
+ * <b>function:</b> query result cache test
+ * @author hoojo
+ * @createDate 2018年9月21日 下午3:12:26
+ * @file QueryResultCacheTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.core
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class QueryResultCacheTest {
+
+	private static final User ADMIN = user("admin", "Org1MSP");
+	private static final User USER = user("user1", "Org2MSP");
+	
+	private final AtomicInteger calls = new AtomicInteger();
+	
+	private static User user(String name, String mspId) {
+		return new User() {
+			@Override
+			public String getName() {
+				return name;
+			}
+			@Override
+			public Set<String> getRoles() {
+				return Collections.emptySet();
+			}
+			@Override
+			public String getAccount() {
+				return null;
+			}
+			@Override
+			public String getAffiliation() {
+				return null;
+			}
+			@Override
+			public Enrollment getEnrollment() {
+				return null;
+			}
+			@Override
+			public String getMspId() {
+				return mspId;
+			}
+		};
+	}
+	
+	private static TransactionEntity transaction(String chaincode, String... args) {
+		ChaincodeID chaincodeId = ChaincodeID.newBuilder().setName(chaincode).setVersion("1.0").build();
+		return new TransactionEntity(chaincodeId, Type.GO_LANG, "query", args);
+	}
+	
+	private QueryResultEntity query(QueryResultCache cache, User user, TransactionEntity transaction) throws Exception {
+		return cache.get("mychannel", user, transaction, () -> {
+			calls.incrementAndGet();
+			return new QueryResultEntity("peer0", ByteString.copyFromUtf8("100"));
+		});
+	}
+	
+	@Test
+	public void testHit() throws Exception {
+		QueryResultCache cache = new QueryResultCache(100, QueryResultCache.INVALIDATION_NAMESPACE);
+		
+		query(cache, ADMIN, transaction("mycc", "a"));
+		query(cache, ADMIN, transaction("mycc", "a"));
+		assertEquals(1, calls.get());
+		
+		// 参数不同、用户不同都不共享缓存
+		query(cache, ADMIN, transaction("mycc", "b"));
+		query(cache, USER, transaction("mycc", "a"));
+		query(cache, user("admin", "Org2MSP"), transaction("mycc", "a"));
+		assertEquals(4, calls.get());
+		assertEquals(4, cache.size());
+	}
+	
+	@Test
+	public void testNamespaceInvalidation() throws Exception {
+		QueryResultCache cache = new QueryResultCache(100, QueryResultCache.INVALIDATION_NAMESPACE);
+		
+		query(cache, ADMIN, transaction("mycc", "a"));
+		query(cache, ADMIN, transaction("othercc", "a"));
+		
+		cache.onBlock("mychannel", 5, Collections.singleton("mycc"));
+		assertEquals(1, cache.size());
+		
+		query(cache, ADMIN, transaction("othercc", "a"));
+		assertEquals(2, calls.get());
+		query(cache, ADMIN, transaction("mycc", "a"));
+		assertEquals(3, calls.get());
+		
+		// 其他通道的区块不影响
+		cache.onBlock("otherchannel", 5, null);
+		assertEquals(2, cache.size());
+		
+		// 无法解析读写集时失效通道全部缓存
+		cache.onBlock("mychannel", 6, null);
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void testAllInvalidation() throws Exception {
+		QueryResultCache cache = new QueryResultCache(100, QueryResultCache.INVALIDATION_ALL);
+		
+		query(cache, ADMIN, transaction("mycc", "a"));
+		query(cache, ADMIN, transaction("othercc", "a"));
+		
+		cache.onBlock("mychannel", 5, Collections.singleton("mycc"));
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void testGenerationRace() throws Exception {
+		QueryResultCache cache = new QueryResultCache(100, QueryResultCache.INVALIDATION_NAMESPACE);
+		TransactionEntity transaction = transaction("mycc", "a");
+		
+		// 查询期间到达新区块，查询结果可能已过期，不写入缓存
+		cache.get("mychannel", ADMIN, transaction, () -> {
+			calls.incrementAndGet();
+			cache.onBlock("mychannel", 5, Collections.singleton("mycc"));
+			return new QueryResultEntity("peer0", ByteString.copyFromUtf8("100"));
+		});
+		assertEquals(0, cache.size());
+		
+		query(cache, ADMIN, transaction);
+		assertEquals(2, calls.get());
+		assertEquals(1, cache.size());
+	}
+}
@@ -0,0 +1,300 @@
+package com.cnblogs.hoojo.fabric.sdk.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <b>function:</b> AppendLogKeyValueStore test
+ * @author hoojo
+ * @createDate 2018年7月6日 下午4:10:27
+ * @file AppendLogKeyValueStoreTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.persistence
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class AppendLogKeyValueStoreTest {
+
+	private File logFile;
+	
+	@Before
+	public void setup() throws Exception {
+		logFile = File.createTempFile("keyvalue-log", ".db");
+		logFile.delete();
+	}
+	
+	@After
+	public void clean() {
+		logFile.delete();
+		new File(logFile.getAbsolutePath() + ".lock").delete();
+	}
+	
+	private AppendLogKeyValueStore open() {
+		return new AppendLogKeyValueStore(logFile, false, 0.5, 0, 0);
+	}
+	
+	@Test
+	public void testReplay() {
+		AppendLogKeyValueStore store = open();
+		for (int i = 0; i < 100; i++) {
+			store.set("user." + (i % 10), "value" + i);
+		}
+		store.set("channel.foo", "foo");
+		store.remove("channel.foo");
+		store.close();
+		
+		store = open();
+		assertEquals("value93", store.get("user.3"));
+		assertFalse(store.contains("channel.foo"));
+		assertNull(store.get("channel.foo"));
+		store.close();
+	}
+	
+	@Test
+	public void testCompact() throws Exception {
+		AppendLogKeyValueStore store = open();
+		for (int i = 0; i < 100; i++) {
+			store.set("user." + (i % 10), "value" + i);
+		}
+		long before = store.getLogSize();
+		
+		store.compact();
+		assertTrue(store.getLogSize() < before);
+		assertEquals(store.getLogSize(), logFile.length());
+		
+		store.set("user.0", "compacted");
+		store.close();
+		
+		store = open();
+		assertEquals("compacted", store.get("user.0"));
+		assertEquals("value99", store.get("user.9"));
+		store.close();
+	}
+	
+	@Test
+	public void testCompactWhileWriting() throws Exception {
+		AppendLogKeyValueStore store = open();
+		for (int i = 0; i < 1000; i++) {
+			store.set("user." + (i % 10), "value" + i);
+		}
+		
+		// 压缩期间继续写入，压缩不持有存储锁，写入的记录要复制到新日志
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < 2000; i++) {
+				store.set("user." + (i % 20), "written" + i);
+			}
+		});
+		writer.start();
+		for (int i = 0; i < 5; i++) {
+			store.compact();
+		}
+		writer.join();
+		store.compact();
+		assertEquals(store.getLogSize(), logFile.length());
+		store.close();
+		
+		AppendLogKeyValueStore reopened = open();
+		for (int i = 0; i < 20; i++) {
+			assertEquals("written" + (1980 + i), reopened.get("user." + i));
+		}
+		reopened.close();
+	}
+	
+	@Test
+	public void testTruncateBrokenTail() throws Exception {
+		AppendLogKeyValueStore store = open();
+		store.set("user.admin", "admin");
+		store.set("user.user1", "user1");
+		store.close();
+		
+		try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+			file.setLength(file.length() - 2);
+		}
+		
+		store = open();
+		assertEquals("admin", store.get("user.admin"));
+		assertFalse(store.contains("user.user1"));
+		assertEquals(store.getLogSize(), logFile.length());
+		
+		store.set("user.user1", "again");
+		store.close();
+		
+		store = open();
+		assertEquals("again", store.get("user.user1"));
+		store.close();
+	}
+	
+	@Test
+	public void testTornWrite() throws Exception {
+		AtomicBoolean tear = new AtomicBoolean();
+		AppendLogKeyValueStore store = new AppendLogKeyValueStore(logFile, false, 0.5, 0, 0) {
+			@Override
+			FileChannel openChannel() throws IOException {
+				return new TornFileChannel(super.openChannel(), tear);
+			}
+		};
+		store.set("user.admin", "admin");
+		
+		tear.set(true);
+		try {
+			store.set("user.user1", "user1");
+			fail("写入中断应该抛出异常");
+		} catch (UncheckedIOException e) {
+			// expected
+		}
+		assertFalse(store.contains("user.user1"));
+		assertEquals(store.getLogSize(), logFile.length());
+		
+		// 写入中断之后的记录不能丢失
+		store.set("user.user2", "user2");
+		store.close();
+		
+		store = open();
+		assertEquals("admin", store.get("user.admin"));
+		assertFalse(store.contains("user.user1"));
+		assertEquals("user2", store.get("user.user2"));
+		store.close();
+	}
+	
+	@Test
+	public void testExclusiveOwner() {
+		AppendLogKeyValueStore store = open();
+		try {
+			open();
+			fail("日志已被占用，不能重复打开");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		store.close();
+		
+		store = open();
+		store.close();
+	}
+	
+	/**
+	 * 写入一半后抛出异常的日志通道，模拟磁盘满等写入中断
+	 */
+	private static final class TornFileChannel extends FileChannel {
+		
+		private final FileChannel delegate;
+		private final AtomicBoolean tear;
+		
+		private TornFileChannel(FileChannel delegate, AtomicBoolean tear) {
+			this.delegate = delegate;
+			this.tear = tear;
+		}
+		
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			if (tear.compareAndSet(true, false)) {
+				ByteBuffer half = src.duplicate();
+				half.limit(src.position() + src.remaining() / 2);
+				delegate.write(half);
+				throw new IOException("No space left on device");
+			}
+			return delegate.write(src);
+		}
+		
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			return delegate.read(dst);
+		}
+		
+		@Override
+		public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+			return delegate.read(dsts, offset, length);
+		}
+		
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			return delegate.write(srcs, offset, length);
+		}
+		
+		@Override
+		public long position() throws IOException {
+			return delegate.position();
+		}
+		
+		@Override
+		public FileChannel position(long newPosition) throws IOException {
+			delegate.position(newPosition);
+			return this;
+		}
+		
+		@Override
+		public long size() throws IOException {
+			return delegate.size();
+		}
+		
+		@Override
+		public FileChannel truncate(long size) throws IOException {
+			delegate.truncate(size);
+			return this;
+		}
+		
+		@Override
+		public void force(boolean metaData) throws IOException {
+			delegate.force(metaData);
+		}
+		
+		@Override
+		public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+			return delegate.transferTo(position, count, target);
+		}
+		
+		@Override
+		public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+			return delegate.transferFrom(src, position, count);
+		}
+		
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException {
+			return delegate.read(dst, position);
+		}
+		
+		@Override
+		public int write(ByteBuffer src, long position) throws IOException {
+			return delegate.write(src, position);
+		}
+		
+		@Override
+		public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+			return delegate.map(mode, position, size);
+		}
+		
+		@Override
+		public FileLock lock(long position, long size, boolean shared) throws IOException {
+			return delegate.lock(position, size, shared);
+		}
+		
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+			return delegate.tryLock(position, size, shared);
+		}
+		
+		@Override
+		protected void implCloseChannel() throws IOException {
+			delegate.close();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.cnblogs.hoojo.fabric.sdk.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.interfaces.ECPrivateKey;
+
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <b>function:</b> CredentialCache test
+ * @author hoojo
+ * @createDate 2018年7月11日 上午10:32:19
+ * @file CredentialCacheTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.persistence
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class CredentialCacheTest {
+
+	private File keyFile;
+	private CredentialCache cache;
+	
+	@Before
+	public void setup() throws Exception {
+		keyFile = File.createTempFile("priv", "_sk");
+		cache = new CredentialCache(16);
+	}
+	
+	@After
+	public void clean() {
+		keyFile.delete();
+	}
+	
+	private static String toPEM(PrivateKey key) throws Exception {
+		StringWriter writer = new StringWriter();
+		try (JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+			pemWriter.writeObject(key);
+		}
+		return writer.toString();
+	}
+	
+	@Test
+	public void testPrivateKeyFile() throws Exception {
+		KeyPair first = KeyPairGenerator.getInstance("EC").generateKeyPair();
+		Files.write(keyFile.toPath(), toPEM(first.getPrivate()).getBytes(StandardCharsets.UTF_8));
+		
+		PrivateKey key = cache.getPrivateKey(keyFile);
+		assertSame(key, cache.getPrivateKey(keyFile));
+		// 相同内容共用解析结果
+		assertSame(key, cache.getPrivateKey(Files.readAllBytes(keyFile.toPath())));
+		
+		KeyPair second = KeyPairGenerator.getInstance("EC").generateKeyPair();
+		Files.write(keyFile.toPath(), toPEM(second.getPrivate()).getBytes(StandardCharsets.UTF_8));
+		keyFile.setLastModified(keyFile.lastModified() + 2000);
+		
+		PrivateKey changed = cache.getPrivateKey(keyFile);
+		assertNotSame(key, changed);
+		assertEquals(((ECPrivateKey) second.getPrivate()).getS(), ((ECPrivateKey) changed).getS());
+	}
+	
+	@Test
+	public void testPKCS8() throws Exception {
+		KeyPair keyPair = KeyPairGenerator.getInstance("EC").generateKeyPair();
+		byte[] encoded = keyPair.getPrivate().getEncoded();
+		
+		PrivateKey key = cache.getPrivateKey("EC", encoded);
+		assertSame(key, cache.getPrivateKey("EC", encoded.clone()));
+	}
+}
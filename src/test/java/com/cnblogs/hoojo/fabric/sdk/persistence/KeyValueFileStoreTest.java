@@ -0,0 +1,172 @@
+package com.cnblogs.hoojo.fabric.sdk.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <b>function:</b> KeyValueFileStore test
+ * @author hoojo
+ * @createDate 2018年7月5日 上午10:20:35
+ * @file KeyValueFileStoreTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.persistence
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class KeyValueFileStoreTest {
+
+	private File storeFile;
+	
+	@Before
+	public void setup() throws Exception {
+		storeFile = File.createTempFile("keyvalue-store", ".properties");
+		storeFile.delete();
+	}
+	
+	@After
+	public void clean() {
+		storeFile.delete();
+		new File(storeFile.getAbsolutePath() + ".lock").delete();
+	}
+	
+	@Test
+	public void testReadWrite() {
+		KeyValueFileStore store = new KeyValueFileStore(storeFile);
+		
+		assertFalse(store.contains("user.admin"));
+		assertNull(store.get("user.admin"));
+		
+		store.set("user.admin", "1");
+		store.set("user.admin", "2");
+		
+		assertTrue(store.contains("user.admin"));
+		assertEquals("2", store.get("user.admin"));
+		
+		store.close();
+	}
+	
+	@Test
+	public void testFlush() {
+		KeyValueFileStore store = new KeyValueFileStore(storeFile, 60000);
+		store.set("channel.foo", "foo");
+		store.set("channel.bar", "bar");
+		
+		assertFalse(storeFile.exists());
+		
+		store.flush();
+		assertTrue(storeFile.exists());
+		assertFalse(new File(storeFile.getAbsolutePath() + ".tmp").exists());
+		
+		KeyValueFileStore restore = new KeyValueFileStore(storeFile);
+		assertEquals("foo", restore.get("channel.foo"));
+		assertEquals("bar", restore.get("channel.bar"));
+		
+		store.close();
+		restore.close();
+	}
+	
+	@Test
+	public void testFlushRetry() {
+		// 临时文件路径被目录占用，写入失败
+		File temp = new File(storeFile.getAbsolutePath() + ".tmp");
+		assertTrue(temp.mkdir());
+		
+		KeyValueFileStore store = new KeyValueFileStore(storeFile, 60000);
+		store.set("user.foo", "foo");
+		store.flush();
+		assertFalse(storeFile.exists());
+		
+		// 写入失败的变更保留，恢复后再次落盘写入
+		assertTrue(temp.delete());
+		store.flush();
+		
+		KeyValueFileStore restore = new KeyValueFileStore(storeFile);
+		assertEquals("foo", restore.get("user.foo"));
+		
+		store.close();
+		restore.close();
+	}
+	
+	@Test
+	public void testDelayedFlush() throws Exception {
+		KeyValueFileStore store = new KeyValueFileStore(storeFile, 50);
+		store.set("channel.foo", "foo");
+		
+		Thread.sleep(500);
+		KeyValueFileStore restore = new KeyValueFileStore(storeFile);
+		assertEquals("foo", restore.get("channel.foo"));
+		
+		store.close();
+		restore.close();
+	}
+	
+	@Test
+	public void testConcurrentWrite() throws Exception {
+		KeyValueFileStore store = new KeyValueFileStore(storeFile, 10);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			final int thread = i;
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < 100; j++) {
+					store.set("user." + thread + "." + j, String.valueOf(j));
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		store.close();
+		
+		KeyValueFileStore restore = new KeyValueFileStore(storeFile);
+		for (int i = 0; i < 8; i++) {
+			for (int j = 0; j < 100; j++) {
+				assertEquals(String.valueOf(j), restore.get("user." + i + "." + j));
+			}
+		}
+		restore.close();
+	}
+	
+	@Test
+	public void testSharedFile() {
+		KeyValueFileStore first = new KeyValueFileStore(storeFile, 60000);
+		KeyValueFileStore second = new KeyValueFileStore(storeFile, 60000);
+		
+		first.set("user.foo", "foo");
+		first.flush();
+		second.set("user.bar", "bar");
+		second.flush();
+		
+		// 第二个实例落盘时合并了第一个实例的写入
+		assertEquals("foo", second.get("user.foo"));
+		
+		first.remove("user.foo");
+		first.flush();
+		second.refresh();
+		assertFalse(second.contains("user.foo"));
+		
+		KeyValueFileStore restore = new KeyValueFileStore(storeFile);
+		assertFalse(restore.contains("user.foo"));
+		assertEquals("bar", restore.get("user.bar"));
+		
+		first.close();
+		second.close();
+		restore.close();
+	}
+}
@@ -0,0 +1,141 @@
+package com.cnblogs.hoojo.fabric.sdk.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.encoders.Hex;
+import org.hyperledger.fabric.sdk.identity.X509Enrollment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cnblogs.hoojo.fabric.sdk.model.OrganizationUser;
+
+/**
+ * <b>function:</b> UserStateCodec test
+ * @author hoojo
+ * @createDate 2018年7月10日 上午11:05:37
+ * @file UserStateCodecTest.java
+ * @package com.cnblogs.hoojo.fabric.sdk.persistence
+ * @project fabric-sdk-examples
+ * @blog http://hoojo.cnblogs.com
+ * @email hoojo_@126.com
+ * @version 1.0
+ */
+public class UserStateCodecTest {
+
+	private File storeFile;
+	private KeyValueFileStore store;
+	
+	@Before
+	public void setup() throws Exception {
+		storeFile = File.createTempFile("keyvalue-store", ".properties");
+		storeFile.delete();
+		
+		store = new KeyValueFileStore(storeFile);
+	}
+	
+	@After
+	public void clean() {
+		store.close();
+		storeFile.delete();
+		new File(storeFile.getAbsolutePath() + ".lock").delete();
+	}
+	
+	@Test
+	public void testEncodeDecode() throws Exception {
+		KeyPair keyPair = KeyPairGenerator.getInstance("EC").generateKeyPair();
+		
+		OrganizationUser user = new OrganizationUser("admin", "org1", store);
+		user.setMspId("Org1MSP");
+		user.setAffiliation("org1.department1");
+		user.setRoles(new HashSet<>(Arrays.asList("client", "peer")));
+		user.setEnrollmentSecret("secret");
+		user.setEnrollment(new AbstractKeyValueStore.StoreEnrollement(keyPair.getPrivate(), "-----BEGIN CERTIFICATE-----"));
+		
+		String value = store.get(OrganizationUser.toStoreKey("admin", "org1"));
+		assertTrue(UserStateCodec.isEncoded(value));
+		
+		UserStateCodec.UserState state = UserStateCodec.decode(value);
+		assertEquals("admin", state.getName());
+		assertEquals("org1", state.getOrganization());
+		assertEquals("Org1MSP", state.getMspId());
+		assertEquals("org1.department1", state.getAffiliation());
+		assertEquals("secret", state.getEnrollmentSecret());
+		assertEquals(user.getRoles(), state.getRoles());
+		assertEquals("-----BEGIN CERTIFICATE-----", state.getEnrollment().getCert());
+		assertTrue(Arrays.equals(keyPair.getPrivate().getEncoded(), state.getEnrollment().getKey().getEncoded()));
+	}
+	
+	@Test
+	public void testLegacyMigration() throws Exception {
+		// CA 认证返回的证书，私钥由 BouncyCastle 生成
+		KeyPair keyPair = KeyPairGenerator.getInstance("EC", new BouncyCastleProvider()).generateKeyPair();
+		
+		OrganizationUser user = new OrganizationUser("user1", "org1", store);
+		user.setMspId("Org1MSP");
+		user.setEnrollment(new X509Enrollment(keyPair.getPrivate(), "-----BEGIN CERTIFICATE-----"));
+		
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+			oos.writeObject(user);
+		}
+		String storeKey = OrganizationUser.toStoreKey("user1", "org1");
+		store.set(storeKey, Hex.toHexString(bos.toByteArray()));
+		
+		OrganizationUser restored = new OrganizationUser("user1", "org1", store);
+		assertNotNull(restored.getMspId());
+		assertEquals("Org1MSP", restored.getMspId());
+		assertEquals("-----BEGIN CERTIFICATE-----", restored.getEnrollment().getCert());
+		assertTrue(Arrays.equals(keyPair.getPrivate().getEncoded(), restored.getEnrollment().getKey().getEncoded()));
+		assertTrue(UserStateCodec.isEncoded(store.get(storeKey)));
+	}
+	
+	@Test
+	public void testCorruptLength() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bos)) {
+			out.writeShort(0x4655);
+			out.writeByte(1);
+			out.writeInt(Integer.MAX_VALUE);
+		}
+		
+		try {
+			UserStateCodec.decode(UserStateCodec.PREFIX + Base64.getEncoder().encodeToString(bos.toByteArray()));
+			fail("损坏的长度应该解码失败");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("已损坏"));
+		}
+	}
+	
+	@Test
+	public void testLegacyRejectsClass() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+			oos.writeObject(new ArrayList<>(Arrays.asList("a")));
+		}
+		
+		try {
+			UserStateCodec.decodeLegacy(Hex.toHexString(bos.toByteArray()));
+			fail("白名单外的类不能反序列化");
+		} catch (InvalidClassException e) {
+			assertEquals("java.util.ArrayList", e.classname);
+		}
+	}
+}